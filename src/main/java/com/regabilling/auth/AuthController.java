@@ -1,10 +1,12 @@
 package com.regabilling.auth;
 
 import com.regabilling.auth.dto.*;
+import com.regabilling.auth.password.PasswordHashingUnavailableException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -29,6 +31,15 @@ public class AuthController {
         try {
             SignupDecoyResponse response = signupDecoyService.initiateSignup(request);
             return new ResponseEntity<>(response, HttpStatus.CREATED);
+        } catch (PasswordHashingUnavailableException e) {
+            log.warn("Signup deferred, password hashing saturated");
+            SignupDecoyResponse errorResponse = new SignupDecoyResponse();
+            errorResponse.setMessage(e.getMessage());
+            return serviceUnavailable(errorResponse);
+        } catch (EmailAlreadyRegisteredException e) {
+            SignupDecoyResponse errorResponse = new SignupDecoyResponse();
+            errorResponse.setMessage("Signup failed: " + e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
         } catch (Exception e) {
             log.error("Signup failed: {}", e.getMessage());
             SignupDecoyResponse errorResponse = new SignupDecoyResponse();
@@ -48,6 +59,11 @@ public class AuthController {
         try {
             TokensResponse response = loginService.authenticateUser(request);
             return ResponseEntity.ok(response);
+        } catch (PasswordHashingUnavailableException e) {
+            log.warn("Login deferred, password hashing saturated");
+            TokensResponse errorResponse = new TokensResponse();
+            errorResponse.setMessage(e.getMessage());
+            return serviceUnavailable(errorResponse);
         } catch (Exception e) {
             log.error("Login failed: {}", e.getMessage());
             TokensResponse errorResponse = new TokensResponse();
@@ -55,4 +71,10 @@ public class AuthController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
         }
     }
+    
+    private static <T> ResponseEntity<T> serviceUnavailable(T body) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(body);
+    }
 }
@@ -0,0 +1,8 @@
+package com.regabilling.auth;
+
+public class EmailAlreadyRegisteredException extends RuntimeException {
+    
+    public EmailAlreadyRegisteredException(String message) {
+        super(message);
+    }
+}
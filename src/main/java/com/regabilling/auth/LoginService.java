@@ -9,7 +9,8 @@ import com.regabilling.security.JwtService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
 
 @Slf4j
 @Service
@@ -20,7 +21,8 @@ public class LoginService {
     private final PasswordService passwordService;
     private final JwtService jwtService;
 
-    @Transactional
+    // Not transactional: the BCrypt check can wait on the hashing pool, and
+    // holding a pooled connection for that long would starve the datasource.
     public TokensResponse authenticateUser(LoginRequest request) {
         log.debug("Authentication attempt for email: {}", request.getEmail());
         
@@ -37,6 +39,8 @@ public class LoginService {
             throw new RuntimeException("Account access restricted. Please ensure payment is up to date.");
         }
         
+        rehashIfNeeded(user, request.getPassword());
+        
         String accessToken = jwtService.generateAccessToken(
             user.getId(), 
             user.getEmail(), 
@@ -54,4 +58,21 @@ public class LoginService {
             "Login successful!"
         );
     }
+    
+    // Upgrades hashes made with an older cost now that the plaintext is known.
+    // A failure here must not fail the login; the next one will retry.
+    private void rehashIfNeeded(User user, String rawPassword) {
+        if (!passwordService.needsRehash(user.getPasswordHash())) {
+            return;
+        }
+        
+        try {
+            String newHash = passwordService.hashPassword(rawPassword);
+            if (userRepository.replacePasswordHash(user.getId(), user.getPasswordHash(), newHash, Instant.now()) > 0) {
+                log.info("Upgraded password hash for user: {}", user.getEmail());
+            }
+        } catch (Exception e) {
+            log.warn("Could not upgrade password hash for user {}: {}", user.getEmail(), e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.regabilling.auth;
+
+import com.regabilling.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bloom filter over every email in pre_customers. Duplicates are rare, so
+// most signups get a definite "not registered" from memory and skip the
+// pre_customers existence query. Rows written by other nodes after startup
+// are missing here, which is safe only because the unique key on
+// pre_customers.email stays the final arbiter. users has no such key shared
+// with signup and is written outside this app, so it is always queried.
+// Until the startup scan finishes every lookup answers "maybe".
+@Component
+@Slf4j
+public class RegisteredEmails {
+    
+    private static final String SOURCE_SQL = "SELECT email FROM pre_customers";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final BloomFilter filter;
+    private final long expectedEmails;
+    private final int fetchSize;
+    private final AtomicLong size = new AtomicLong();
+    private final Counter skipped;
+    private final Counter checked;
+    
+    private volatile boolean ready;
+    
+    public RegisteredEmails(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.auth.signup.email-filter.expected-emails:1000000}") long expectedEmails,
+            @Value("${app.auth.signup.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${app.auth.signup.email-filter.fetch-size:1000}") int fetchSize) {
+        
+        this.jdbcTemplate = jdbcTemplate;
+        this.expectedEmails = expectedEmails;
+        this.fetchSize = fetchSize;
+        this.filter = BloomFilter.create(expectedEmails, falsePositiveRate);
+        this.skipped = Counter.builder("auth.signup.email.precheck").tag("result", "miss").register(meterRegistry);
+        this.checked = Counter.builder("auth.signup.email.precheck").tag("result", "maybe").register(meterRegistry);
+    }
+    
+    // Rows are streamed straight into the filter, never collected into a list.
+    // Inserts that race with the scan are added by the entity listener, so
+    // nothing committed after startup is missed.
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.currentTimeMillis();
+        try {
+            JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+            streaming.setFetchSize(fetchSize);
+            streaming.query(SOURCE_SQL, (RowCallbackHandler) rs -> add(rs.getString(1)));
+            ready = true;
+            log.info("📧 Loaded {} registered emails into the signup filter in {} ms",
+                size.get(), System.currentTimeMillis() - started);
+            if (size.get() > expectedEmails) {
+                log.warn("⚠️ Signup email filter holds more than the {} emails it was sized for, raise expected-emails", expectedEmails);
+            }
+        } catch (Exception e) {
+            log.error("❌ Error loading registered emails, signup falls back to existence queries: {}", e.getMessage(), e);
+        }
+    }
+    
+    public boolean mightBeRegistered(String email) {
+        if (!ready || filter.mightContain(normalize(email))) {
+            checked.increment();
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+    
+    public void add(String email) {
+        if (email != null && filter.put(normalize(email))) {
+            size.incrementAndGet();
+        }
+    }
+    
+    // Lower-cased so the filter also covers case-insensitive collations; a
+    // coarser key only adds false positives, never false negatives.
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
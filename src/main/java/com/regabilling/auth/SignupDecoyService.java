@@ -8,10 +8,12 @@ import com.regabilling.repository.PreCustomerRepository;
 import com.regabilling.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.util.Locale;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -20,15 +22,20 @@ public class SignupDecoyService {
     private final PreCustomerRepository preCustomerRepository;
     private final UserRepository userRepository;
     private final PasswordService passwordService;
+    private final RegisteredEmails registeredEmails;
 
-    @Transactional
+    // Not transactional for the same reason as LoginService: the hash runs on
+    // the password pool and should not hold a database connection meanwhile.
     public SignupDecoyResponse initiateSignup(SignupDecoyRequest request) {
         log.info("Initiating decoy signup for email: {}", request.getEmail());
         
-        // Check if email already exists
-        if (userRepository.existsByEmail(request.getEmail()) || 
-            preCustomerRepository.existsByEmail(request.getEmail())) {
-            throw new RuntimeException("Email address is already registered");
+        // Users can be created by other services, so they are always checked;
+        // a definite miss in the filter only skips the pre_customers lookup,
+        // which the unique key below backs up.
+        if (userRepository.existsByEmail(request.getEmail()) ||
+            (registeredEmails.mightBeRegistered(request.getEmail()) &&
+             preCustomerRepository.existsByEmail(request.getEmail()))) {
+            throw new EmailAlreadyRegisteredException("Email address is already registered");
         }
         
         // Create pre-customer record
@@ -44,7 +51,17 @@ public class SignupDecoyService {
             builder.password(passwordService.hashPassword(request.getPassword()));
         }
         
-        PreCustomer preCustomer = preCustomerRepository.save(builder.build());
+        // The unique key on pre_customers.email settles concurrent signups
+        PreCustomer preCustomer;
+        try {
+            preCustomer = preCustomerRepository.saveAndFlush(builder.build());
+        } catch (DataIntegrityViolationException e) {
+            if (!isEmailUniqueViolation(e)) {
+                throw e;
+            }
+            log.info("Concurrent signup for email {} lost the unique key race", request.getEmail());
+            throw new EmailAlreadyRegisteredException("Email address is already registered");
+        }
         
         log.info("Created pre-customer {} for email {}", preCustomer.getId(), request.getEmail());
         
@@ -60,4 +77,18 @@ public class SignupDecoyService {
             "Signup successful! Please complete payment to activate your account."
         );
     }
+    
+    // Only the email key means "already registered"; not-null and other
+    // violations keep the generic 400. Hibernate-created schemas use the
+    // entity's key name, the MySQL migrations the column name.
+    private static boolean isEmailUniqueViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.hibernate.exception.ConstraintViolationException violation
+                && violation.getConstraintName() != null) {
+                String name = violation.getConstraintName().toLowerCase(Locale.ROOT);
+                return name.contains(PreCustomer.EMAIL_UNIQUE_KEY) || name.equals("email") || name.endsWith(".email");
+            }
+        }
+        return false;
+    }
 }
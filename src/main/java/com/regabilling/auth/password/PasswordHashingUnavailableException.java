@@ -0,0 +1,10 @@
+package com.regabilling.auth.password;
+
+// Thrown when the password hashing pool is saturated; callers answer 503 so
+// clients back off instead of piling more CPU-bound work onto the queue.
+public class PasswordHashingUnavailableException extends RuntimeException {
+    
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+}
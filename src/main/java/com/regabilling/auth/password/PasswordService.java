@@ -1,20 +1,122 @@
 package com.regabilling.auth.password;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// BCrypt is deliberately slow, so hashing and verification run on a small
+// CPU-sized pool instead of the request thread. A burst of signups then
+// queues here, up to a bound, rather than pinning every Tomcat thread.
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class PasswordService {
     
     private final PasswordEncoder passwordEncoder;
+    private final MeterRegistry meterRegistry;
+    
+    // 0 means one worker per available processor
+    @Value("${app.auth.password.workers:0}")
+    private int workers;
+    
+    @Value("${app.auth.password.queue-capacity:64}")
+    private int queueCapacity;
+    
+    @Value("${app.auth.password.timeout-ms:5000}")
+    private long timeoutMs;
+    
+    private ThreadPoolExecutor executor;
+    private Timer hashTimer;
+    private Timer verifyTimer;
+    private Timer queueWait;
+    private Counter rejected;
+    
+    @PostConstruct
+    void start() {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(
+            poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("password-hash-"),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        log.info("🔐 Password hashing pool started with {} workers, queue capacity {}", poolSize, queueCapacity);
+        
+        hashTimer = Timer.builder("auth.password.duration").tag("operation", "hash").register(meterRegistry);
+        verifyTimer = Timer.builder("auth.password.duration").tag("operation", "verify").register(meterRegistry);
+        queueWait = Timer.builder("auth.password.queue.wait").register(meterRegistry);
+        rejected = Counter.builder("auth.password.rejected").register(meterRegistry);
+        Gauge.builder("auth.password.queue.depth", executor, pool -> pool.getQueue().size())
+            .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
     
     public String hashPassword(String rawPassword) {
-        return passwordEncoder.encode(rawPassword);
+        return run(hashTimer, () -> passwordEncoder.encode(rawPassword));
     }
     
     public boolean matches(String rawPassword, String hashedPassword) {
-        return passwordEncoder.matches(rawPassword, hashedPassword);
+        return run(verifyTimer, () -> passwordEncoder.matches(rawPassword, hashedPassword));
+    }
+    
+    // True when the stored hash was produced with an older cost or algorithm
+    // and should be replaced after a successful login. Cheap: it only parses the hash.
+    public boolean needsRehash(String hashedPassword) {
+        return passwordEncoder.upgradeEncoding(hashedPassword);
+    }
+    
+    private <T> T run(Timer timer, Callable<T> work) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(work);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("⚠️ Password hashing pool is saturated, rejecting request");
+            throw new PasswordHashingUnavailableException("Authentication is temporarily busy, please retry shortly");
+        }
+        
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            log.warn("⚠️ Password hashing did not complete within {} ms", timeoutMs);
+            throw new PasswordHashingUnavailableException("Authentication is temporarily busy, please retry shortly");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while waiting for password hashing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.regabilling.config;
 
 import com.regabilling.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -18,6 +19,10 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 public class AppConfig {
     
     private final UserRepository userRepository;
+    
+    // Raising this rehashes existing passwords on their next successful login
+    @Value("${app.auth.password.bcrypt-strength:12}")
+    private int bcryptStrength;
 
     @Bean
     public UserDetailsService userDetailsService() {
@@ -40,6 +45,6 @@ public class AppConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 }
@@ -0,0 +1,140 @@
+package com.regabilling.config;
+
+import com.regabilling.service.ProviderHttpClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Configuration
+@Slf4j
+public class OutboundHttpConfig {
+    
+    @Value("${app.http.max-connections:200}")
+    private int maxConnections;
+    
+    @Value("${app.http.sendgrid.max-connections:50}")
+    private int sendGridMaxConnections;
+    
+    @Value("${app.http.twilio.max-connections:50}")
+    private int twilioMaxConnections;
+    
+    @Value("${app.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+    
+    @Value("${app.http.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+    
+    @Value("${app.http.lease-timeout-ms:5000}")
+    private long leaseTimeoutMs;
+    
+    @Value("${app.http.keep-alive-seconds:120}")
+    private long keepAliveSeconds;
+    
+    @Value("${app.http.http2-enabled:false}")
+    private boolean http2Enabled;
+    
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager providerConnectionManager(MeterRegistry meterRegistry) {
+        InstrumentedConnectionManager connectionManager = new InstrumentedConnectionManager(meterRegistry);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(Math.max(sendGridMaxConnections, twilioMaxConnections));
+        connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost("https", "api.sendgrid.com", 443)), sendGridMaxConnections);
+        connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost("https", "api.twilio.com", 443)), twilioMaxConnections);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+            .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+            .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+            .build());
+        
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "provider-http").bindTo(meterRegistry);
+        return connectionManager;
+    }
+    
+    @Bean
+    public ProviderHttpClient providerHttpClient(PoolingHttpClientConnectionManager providerConnectionManager) {
+        ClientHttpRequestFactory requestFactory;
+        
+        if (http2Enabled) {
+            log.info("🌐 Provider HTTP client using JDK HttpClient with HTTP/2");
+            HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+            JdkClientHttpRequestFactory jdkFactory = new JdkClientHttpRequestFactory(httpClient);
+            jdkFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+            requestFactory = jdkFactory;
+        } else {
+            CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(providerConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(Timeout.ofMilliseconds(leaseTimeoutMs))
+                    .setConnectionKeepAlive(TimeValue.ofSeconds(keepAliveSeconds))
+                    .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(keepAliveSeconds))
+                .build();
+            requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        }
+        
+        return new ProviderHttpClient(new RestTemplate(requestFactory));
+    }
+    
+    private static final class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+        
+        private final MeterRegistry meterRegistry;
+        
+        private InstrumentedConnectionManager(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+        
+        @Override
+        public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+            LeaseRequest delegate = super.lease(id, route, requestTimeout, state);
+            Timer leaseTimer = Timer.builder("provider.http.pool.lease")
+                .tag("host", route.getTargetHost().getHostName())
+                .register(meterRegistry);
+            
+            return new LeaseRequest() {
+                @Override
+                public ConnectionEndpoint get(Timeout timeout) throws InterruptedException, ExecutionException, TimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return delegate.get(timeout);
+                    } finally {
+                        leaseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+                
+                @Override
+                public boolean cancel() {
+                    return delegate.cancel();
+                }
+            };
+        }
+    }
+}
@@ -1,19 +1,37 @@
 package com.regabilling.config;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import com.regabilling.security.RateLimitFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import java.time.Duration;
+import java.util.List;
 
 @Configuration
 public class RateLimitConfig {
 
+    // First matching prefix wins, so more specific routes come first
     @Bean
-    public Bucket createRateLimitBucket() {
-        // Allow 1000 requests per minute per instance
-        Bandwidth limit = Bandwidth.classic(1000, Refill.intervally(1000, Duration.ofMinutes(1)));
-        return Bucket.builder().addLimit(limit).build();
+    public List<RateLimitFilter.RoutePolicy> rateLimitPolicies(
+            @Value("${app.rate-limit.signup.capacity:10}") long signupCapacity,
+            @Value("${app.rate-limit.signup.period-seconds:60}") long signupPeriod,
+            @Value("${app.rate-limit.login.capacity:20}") long loginCapacity,
+            @Value("${app.rate-limit.login.period-seconds:60}") long loginPeriod,
+            @Value("${app.rate-limit.tracking.capacity:600}") long trackingCapacity,
+            @Value("${app.rate-limit.tracking.period-seconds:60}") long trackingPeriod,
+            @Value("${app.rate-limit.api.capacity:1000}") long apiCapacity,
+            @Value("${app.rate-limit.api.period-seconds:60}") long apiPeriod) {
+        
+        return List.of(
+            new RateLimitFilter.RoutePolicy("signup", "/auth/signup-decoy", RateLimitFilter.KeyStrategy.IP,
+                signupCapacity, Duration.ofSeconds(signupPeriod)),
+            new RateLimitFilter.RoutePolicy("login", "/auth/login", RateLimitFilter.KeyStrategy.IP,
+                loginCapacity, Duration.ofSeconds(loginPeriod)),
+            // Mail image proxies share addresses, hence the generous limit
+            new RateLimitFilter.RoutePolicy("tracking", "/api/track/", RateLimitFilter.KeyStrategy.IP,
+                trackingCapacity, Duration.ofSeconds(trackingPeriod)),
+            new RateLimitFilter.RoutePolicy("api", "/api/", RateLimitFilter.KeyStrategy.TOKEN,
+                apiCapacity, Duration.ofSeconds(apiPeriod))
+        );
     }
 }
@@ -0,0 +1,11 @@
+package com.regabilling.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Delivery runs on DeliveryPipeline's own lanes and retries, and providers use
+// the pooled client from OutboundHttpConfig, so only scheduling is enabled here.
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,21 +1,35 @@
 package com.regabilling.controller;
 
 import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.entity.RetargetingMetricsRollup;
 import com.regabilling.entity.RetargetingTemplate;
 import com.regabilling.repository.RetargetingCampaignRepository;
 import com.regabilling.repository.RetargetingTemplateRepository;
+import com.regabilling.service.RetargetingAnalyticsService;
+import com.regabilling.service.RetargetingMetricsArchive;
 import com.regabilling.service.RetargetingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.TreeMap;
 
 @RestController
 @RequestMapping("/api/retargeting")
@@ -26,6 +40,8 @@ public class RetargetingController {
     private final RetargetingService retargetingService;
     private final RetargetingCampaignRepository campaignRepository;
     private final RetargetingTemplateRepository templateRepository;
+    private final RetargetingAnalyticsService analyticsService;
+    private final RetargetingMetricsArchive metricsArchive;
     
     @PostMapping("/schedule")
     public ResponseEntity<Map<String, Object>> triggerScheduling() {
@@ -87,6 +103,80 @@ public class RetargetingController {
         return ResponseEntity.ok(campaigns);
     }
     
+    @GetMapping("/analytics")
+    public ResponseEntity<Map<String, Object>> getAnalytics(
+        @RequestParam(defaultValue = "DAY") RetargetingMetricsRollup.Granularity granularity,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        
+        LocalDateTime rangeEnd = to != null ? to : LocalDateTime.now();
+        // Rollups are keyed by bucket start, so align the range to the bucket
+        // boundary or the partial first bucket falls outside bucketStart >= from.
+        LocalDateTime rangeStart = (from != null ? from : rangeEnd.minusDays(30))
+            .truncatedTo(granularity == RetargetingMetricsRollup.Granularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+        
+        List<RetargetingMetricsRollup> rollups = analyticsService.getRollups(granularity, rangeStart, rangeEnd);
+        
+        Map<String, Long> eventTotals = new TreeMap<>();
+        double totalCost = 0.0;
+        List<Map<String, Object>> buckets = new ArrayList<>(rollups.size());
+        for (RetargetingMetricsRollup rollup : rollups) {
+            eventTotals.merge(rollup.getEventType().name(), rollup.getEventCount(), Long::sum);
+            totalCost += rollup.getTotalCost();
+            
+            Map<String, Object> bucket = new HashMap<>();
+            bucket.put("bucketStart", rollup.getBucketStart());
+            bucket.put("eventType", rollup.getEventType());
+            bucket.put("campaignWeek", rollup.getCampaignWeek());
+            bucket.put("channel", rollup.getChannel());
+            bucket.put("count", rollup.getEventCount());
+            bucket.put("cost", rollup.getTotalCost());
+            buckets.add(bucket);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("granularity", granularity);
+        response.put("from", rangeStart);
+        response.put("to", rangeEnd);
+        response.put("dataThrough", analyticsService.getWatermark().orElse(null));
+        response.put("totals", eventTotals);
+        response.put("totalCost", totalCost);
+        response.put("buckets", buckets);
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/archive")
+    public ResponseEntity<List<Map<String, Object>>> getArchives() throws IOException {
+        List<Map<String, Object>> archives = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<Path>> entry : metricsArchive.listArchives().entrySet()) {
+            long bytes = 0;
+            for (Path part : entry.getValue()) {
+                bytes += Files.size(part);
+            }
+            
+            Map<String, Object> archive = new HashMap<>();
+            archive.put("month", entry.getKey().toString());
+            archive.put("parts", entry.getValue().size());
+            archive.put("compressedBytes", bytes);
+            archives.add(archive);
+        }
+        return ResponseEntity.ok(archives);
+    }
+    
+    @GetMapping(value = "/archive/{month}", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> readArchive(
+        @PathVariable YearMonth month,
+        @RequestParam(required = false) Long campaignId,
+        @RequestParam(required = false) RetargetingMetrics.EventType eventType,
+        @RequestParam(defaultValue = "100000") int limit) {
+        
+        StreamingResponseBody body = out -> metricsArchive.read(month, campaignId, eventType, limit, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+    
     @GetMapping("/templates")
     public ResponseEntity<List<RetargetingTemplate>> getTemplates() {
         List<RetargetingTemplate> templates = templateRepository.findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc();
@@ -1,8 +1,10 @@
 package com.regabilling.controller;
 
-import com.regabilling.service.RetargetingService;
+import com.regabilling.service.ClickLinkSigner;
+import com.regabilling.service.TrackingEventBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -14,7 +16,25 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class TrackingController {
     
-    private final RetargetingService retargetingService;
+    private static final byte[] PIXEL_BYTES = {
+        (byte) 0x47, (byte) 0x49, (byte) 0x46, (byte) 0x38, (byte) 0x39, (byte) 0x61,
+        (byte) 0x01, (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x80, (byte) 0x00,
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0xFF, (byte) 0xFF,
+        (byte) 0xFF, (byte) 0x21, (byte) 0xF9, (byte) 0x04, (byte) 0x01, (byte) 0x00,
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x2C, (byte) 0x00, (byte) 0x00,
+        (byte) 0x00, (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x01, (byte) 0x00,
+        (byte) 0x00, (byte) 0x02, (byte) 0x02, (byte) 0x04, (byte) 0x01, (byte) 0x00,
+        (byte) 0x3B
+    };
+    
+    private static final ResponseEntity<byte[]> PIXEL_RESPONSE = new ResponseEntity<>(PIXEL_BYTES, pixelHeaders(), HttpStatus.OK);
+    
+    private final TrackingEventBuffer trackingEventBuffer;
+    private final ClickLinkSigner clickLinkSigner;
+    
+    // Unsigned or tampered clicks land on the same host the links were issued from.
+    @Value("${app.retargeting.tracking.base-url:https://regabilling.com}")
+    private String trackingBaseUrl;
     
     @GetMapping("/open/{campaignId}")
     public ResponseEntity<byte[]> trackEmailOpen(
@@ -25,57 +45,49 @@ public class TrackingController {
         
         try {
             String clientIp = ipAddress != null ? ipAddress : (realIp != null ? realIp : "unknown");
-            retargetingService.trackEmailOpen(campaignId, userAgent, clientIp);
-            
-            byte[] pixelBytes = {
-                (byte) 0x47, (byte) 0x49, (byte) 0x46, (byte) 0x38, (byte) 0x39, (byte) 0x61,
-                (byte) 0x01, (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x80, (byte) 0x00,
-                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0xFF, (byte) 0xFF,
-                (byte) 0xFF, (byte) 0x21, (byte) 0xF9, (byte) 0x04, (byte) 0x01, (byte) 0x00,
-                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x2C, (byte) 0x00, (byte) 0x00,
-                (byte) 0x00, (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x01, (byte) 0x00,
-                (byte) 0x00, (byte) 0x02, (byte) 0x02, (byte) 0x04, (byte) 0x01, (byte) 0x00,
-                (byte) 0x3B
-            };
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Content-Type", "image/gif");
-            headers.set("Cache-Control", "no-cache, no-store, must-revalidate");
-            headers.set("Pragma", "no-cache");
-            headers.set("Expires", "0");
-            
-            return new ResponseEntity<>(pixelBytes, headers, HttpStatus.OK);
-            
+            trackingEventBuffer.recordOpen(campaignId, userAgent, clientIp);
         } catch (Exception e) {
             log.error("Error tracking email open for campaign {}: {}", campaignId, e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
+        
+        return PIXEL_RESPONSE;
     }
     
+    // Click links are signed at send time, so a valid link is redirected
+    // without a database round trip and unsigned targets are never followed.
     @GetMapping("/click/{campaignId}")
     public ResponseEntity<Void> trackEmailClick(
         @PathVariable Long campaignId,
-        @RequestParam(required = false) String redirect) {
+        @RequestParam(value = "u", required = false) String encodedTarget,
+        @RequestParam(value = "s", required = false) String signature) {
+        
+        String target = clickLinkSigner.verify(campaignId, encodedTarget, signature);
+        if (target == null) {
+            log.warn("Rejected unsigned or tampered click link for campaign {}", campaignId);
+            return ResponseEntity.status(HttpStatus.FOUND)
+                .header("Location", trackingBaseUrl)
+                .build();
+        }
         
         try {
-            retargetingService.trackEmailClick(campaignId, redirect);
-            
-            if (redirect != null && !redirect.isEmpty()) {
-                HttpHeaders headers = new HttpHeaders();
-                headers.add("Location", redirect);
-                return new ResponseEntity<>(headers, HttpStatus.FOUND);
-            } else {
-                HttpHeaders headers = new HttpHeaders();
-                headers.add("Location", "https://regabilling.com");
-                return new ResponseEntity<>(headers, HttpStatus.FOUND);
-            }
-            
+            trackingEventBuffer.recordClick(campaignId, target);
         } catch (Exception e) {
             log.error("Error tracking email click for campaign {}: {}", campaignId, e.getMessage());
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Location", redirect != null ? redirect : "https://regabilling.com");
-            return new ResponseEntity<>(headers, HttpStatus.FOUND);
         }
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", target);
+        headers.add("Cache-Control", "private, max-age=86400");
+        return new ResponseEntity<>(headers, HttpStatus.FOUND);
+    }
+    
+    private static HttpHeaders pixelHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Type", "image/gif");
+        headers.set("Content-Length", String.valueOf(PIXEL_BYTES.length));
+        headers.set("Cache-Control", "no-cache, no-store, must-revalidate");
+        headers.set("Pragma", "no-cache");
+        headers.set("Expires", "0");
+        return HttpHeaders.readOnlyHttpHeaders(headers);
     }
 }
@@ -0,0 +1,54 @@
+package com.regabilling.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "metric_dictionary",
+       uniqueConstraints = @UniqueConstraint(
+           name = "uk_metric_dictionary_value",
+           columnNames = {"kind", "value_hash"}
+       ))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MetricDictionaryEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "metric_dictionary_id_gen")
+    @TableGenerator(
+        name = "metric_dictionary_id_gen",
+        table = "id_sequences",
+        pkColumnName = "sequence_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "metric_dictionary",
+        allocationSize = 50
+    )
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+    
+    // SHA-256 of the value; the values themselves are too long to index.
+    @Column(name = "value_hash", nullable = false, length = 64)
+    private String valueHash;
+    
+    @Column(name = "entry_value", nullable = false, columnDefinition = "TEXT")
+    private String entryValue;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    public enum Kind {
+        USER_AGENT, URL
+    }
+}
@@ -12,21 +12,36 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "pre_customers")
+@EntityListeners(RegisteredEmailListener.class)
+@Table(name = "pre_customers",
+       uniqueConstraints = @UniqueConstraint(
+           name = PreCustomer.EMAIL_UNIQUE_KEY,
+           columnNames = "email"
+       ))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class PreCustomer {
     
+    public static final String EMAIL_UNIQUE_KEY = "uk_pre_customers_email";
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "pre_customer_id_gen")
+    @TableGenerator(
+        name = "pre_customer_id_gen",
+        table = "id_sequences",
+        pkColumnName = "sequence_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "pre_customers",
+        allocationSize = 50
+    )
     private Long id;
     
     @Column(nullable = false)
     private String name;
     
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String email;
     
     @Column(nullable = false)
@@ -0,0 +1,22 @@
+package com.regabilling.entity;
+
+import com.regabilling.auth.RegisteredEmails;
+import jakarta.persistence.PostPersist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+// Keeps the signup email filter in step with every pre-customer insert, whichever code path creates the row.
+@Component
+@RequiredArgsConstructor
+public class RegisteredEmailListener {
+    
+    private final ObjectProvider<RegisteredEmails> registeredEmails;
+    
+    @PostPersist
+    public void onCreated(Object entity) {
+        if (entity instanceof PreCustomer preCustomer && preCustomer.getEmail() != null) {
+            registeredEmails.ifAvailable(filter -> filter.add(preCustomer.getEmail()));
+        }
+    }
+}
@@ -9,12 +9,19 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
 @Table(name = "retargeting_campaigns", indexes = {
     @Index(name = "idx_retargeting_status_scheduled", columnList = "status, scheduled_at"),
     @Index(name = "idx_retargeting_pre_customer", columnList = "pre_customer_id"),
-    @Index(name = "idx_retargeting_external_id", columnList = "external_message_id")
+    @Index(name = "idx_retargeting_external_id", columnList = "external_message_id"),
+    @Index(name = "idx_retargeting_lease", columnList = "status, lease_until"),
+    @Index(name = "idx_retargeting_lease_owner", columnList = "lease_owner")
 })
 @Data
 @NoArgsConstructor
@@ -23,7 +30,15 @@ import java.time.LocalDateTime;
 public class RetargetingCampaign {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "retargeting_campaign_id_gen")
+    @TableGenerator(
+        name = "retargeting_campaign_id_gen",
+        table = "id_sequences",
+        pkColumnName = "sequence_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "retargeting_campaigns",
+        allocationSize = 50
+    )
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -39,12 +54,6 @@ public class RetargetingCampaign {
     @Column(nullable = false)
     private CampaignStatus status = CampaignStatus.SCHEDULED;
     
-    @Column(name = "message_content", columnDefinition = "TEXT")
-    private String messageContent;
-    
-    @Column(name = "email_subject")
-    private String emailSubject;
-    
     @Column(name = "scheduled_at")
     private LocalDateTime scheduledAt;
     
@@ -66,16 +75,35 @@ public class RetargetingCampaign {
     @Column(name = "external_message_id")
     private String externalMessageId;
     
-    @Column(name = "error_message", columnDefinition = "TEXT")
+    @Column(name = "error_message", length = 512)
     private String errorMessage;
     
     @Column(name = "campaign_week")
     private Integer campaignWeek;
     
+    // Bodies are rendered from the template at send time rather than stored
+    // on this row; see CampaignContentRenderer.
+    @Column(name = "template_id")
+    private Long templateId;
+    
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+    
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+    
     @Builder.Default
     @Column(name = "retry_count")
     private Integer retryCount = 0;
     
+    @Builder.Default
+    @Column(name = "open_count")
+    private Integer openCount = 0;
+    
+    @Builder.Default
+    @Column(name = "click_count")
+    private Integer clickCount = 0;
+    
     @Builder.Default
     @Column(name = "cost_incurred")
     private Double costIncurred = 0.0;
@@ -93,7 +121,28 @@ public class RetargetingCampaign {
     }
     
     public enum CampaignStatus {
-        SCHEDULED, SENT, DELIVERED, OPENED, CLICKED, FAILED, CONVERTED
+        SCHEDULED, DISPATCHING, SENT, DELIVERED, OPENED, CLICKED, FAILED, CONVERTED;
+        
+        // Engagement only moves forward, so a late SENT or OPENED callback can
+        // never demote a campaign that has already been clicked or converted.
+        private static final Map<CampaignStatus, Set<CampaignStatus>> SOURCES = new EnumMap<>(CampaignStatus.class);
+        
+        static {
+            SOURCES.put(SCHEDULED, EnumSet.of(DISPATCHING, FAILED));
+            SOURCES.put(DISPATCHING, EnumSet.of(SCHEDULED));
+            SOURCES.put(SENT, EnumSet.of(SCHEDULED, DISPATCHING));
+            SOURCES.put(DELIVERED, EnumSet.of(SENT));
+            SOURCES.put(OPENED, EnumSet.of(SENT, DELIVERED));
+            SOURCES.put(CLICKED, EnumSet.of(SENT, DELIVERED, OPENED));
+            SOURCES.put(FAILED, EnumSet.of(SCHEDULED, DISPATCHING));
+            SOURCES.put(CONVERTED, EnumSet.of(SENT, DELIVERED, OPENED, CLICKED));
+        }
+        
+        // The single transition table: CampaignStateStore and TrackingEventBuffer
+        // build their guarded UPDATEs from it.
+        public static Set<CampaignStatus> sourcesOf(CampaignStatus target) {
+            return Collections.unmodifiableSet(SOURCES.get(target));
+        }
     }
     
     public boolean canRetry() {
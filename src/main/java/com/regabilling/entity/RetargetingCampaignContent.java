@@ -0,0 +1,35 @@
+package com.regabilling.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+// Pre-rendered message bodies for campaigns that cannot be rendered from their
+// template at send time, such as rows planned before bodies left the campaign row.
+@Entity
+@Table(name = "retargeting_campaign_contents")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RetargetingCampaignContent {
+    
+    @Id
+    @Column(name = "campaign_id")
+    private Long campaignId;
+    
+    @Column(name = "email_subject")
+    private String emailSubject;
+    
+    @Column(name = "message_content", columnDefinition = "TEXT")
+    private String messageContent;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
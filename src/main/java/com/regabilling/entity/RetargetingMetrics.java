@@ -12,7 +12,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "retargeting_metrics", indexes = {
     @Index(name = "idx_metrics_event_date", columnList = "event_type, event_timestamp"),
-    @Index(name = "idx_metrics_pre_customer", columnList = "pre_customer_id")
+    @Index(name = "idx_metrics_pre_customer", columnList = "pre_customer_id"),
+    @Index(name = "idx_metrics_created_id", columnList = "created_at, id")
 })
 @Data
 @NoArgsConstructor
@@ -22,7 +23,15 @@ import java.time.LocalDateTime;
 public class RetargetingMetrics {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "retargeting_metrics_id_gen")
+    @TableGenerator(
+        name = "retargeting_metrics_id_gen",
+        table = "id_sequences",
+        pkColumnName = "sequence_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "retargeting_metrics",
+        allocationSize = 50
+    )
     private Long id;
     
     @Column(name = "campaign_id")
@@ -42,6 +51,19 @@ public class RetargetingMetrics {
     @Column(name = "metadata", columnDefinition = "TEXT")
     private String metadata;
     
+    // Ids into metric_dictionary; repeated user agents and URLs are stored once.
+    @Column(name = "user_agent_id")
+    private Long userAgentId;
+    
+    @Column(name = "ip_address", length = 45)
+    private String ipAddress;
+    
+    @Column(name = "url_id")
+    private Long urlId;
+    
+    @Column(name = "error_code", length = 64)
+    private String errorCode;
+    
     @Builder.Default
     @Column(name = "cost_incurred")
     private Double costIncurred = 0.0;
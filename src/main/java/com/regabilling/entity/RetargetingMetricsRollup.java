@@ -0,0 +1,69 @@
+package com.regabilling.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "retargeting_metrics_rollups",
+       uniqueConstraints = @UniqueConstraint(
+           name = "uk_rollup_bucket",
+           columnNames = {"granularity", "bucket_start", "event_type", "campaign_week", "channel"}
+       ),
+       indexes = @Index(name = "idx_rollup_granularity_bucket", columnList = "granularity, bucket_start"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RetargetingMetricsRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "retargeting_rollup_id_gen")
+    @TableGenerator(
+        name = "retargeting_rollup_id_gen",
+        table = "id_sequences",
+        pkColumnName = "sequence_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "retargeting_metrics_rollups",
+        allocationSize = 50
+    )
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Granularity granularity;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false)
+    private RetargetingMetrics.EventType eventType;
+    
+    @Column(name = "campaign_week", nullable = false)
+    private Integer campaignWeek;
+    
+    @Column(nullable = false)
+    private String channel;
+    
+    @Builder.Default
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount = 0L;
+    
+    @Builder.Default
+    @Column(name = "total_cost", nullable = false)
+    private Double totalCost = 0.0;
+    
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public enum Granularity {
+        HOUR, DAY
+    }
+}
@@ -11,6 +11,7 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(RetargetingTemplateListener.class)
 @Table(name = "retargeting_templates", 
        uniqueConstraints = @UniqueConstraint(columnNames = {"template_type", "campaign_week"}))
 @Data
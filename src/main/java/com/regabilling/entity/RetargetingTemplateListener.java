@@ -0,0 +1,23 @@
+package com.regabilling.entity;
+
+import com.regabilling.service.RetargetingTemplateCache;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class RetargetingTemplateListener {
+    
+    private final ObjectProvider<RetargetingTemplateCache> templateCache;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onTemplateChanged(RetargetingTemplate template) {
+        templateCache.ifAvailable(RetargetingTemplateCache::invalidate);
+    }
+}
@@ -14,6 +14,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(UserStatusListener.class)
 @Table(name = "users")
 public class User implements UserDetails {
     
@@ -0,0 +1,21 @@
+package com.regabilling.entity;
+
+import com.regabilling.security.UserStatusCache;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class UserStatusListener {
+    
+    private final ObjectProvider<UserStatusCache> userStatusCache;
+    
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        userStatusCache.ifAvailable(cache -> cache.invalidate(user.getEmail()));
+    }
+}
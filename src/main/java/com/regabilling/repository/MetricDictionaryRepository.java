@@ -0,0 +1,13 @@
+package com.regabilling.repository;
+
+import com.regabilling.entity.MetricDictionaryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface MetricDictionaryRepository extends JpaRepository<MetricDictionaryEntry, Long> {
+    
+    Optional<MetricDictionaryEntry> findByKindAndValueHash(MetricDictionaryEntry.Kind kind, String valueHash);
+}
@@ -1,6 +1,7 @@
 package com.regabilling.repository;
 
 import com.regabilling.entity.PreCustomer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -25,6 +26,14 @@ public interface PreCustomerRepository extends JpaRepository<PreCustomer, Long>
         @Param("cutoffDate") LocalDateTime cutoffDate
     );
     
+    @Query("SELECT pc FROM PreCustomer pc WHERE pc.id > :afterId AND pc.status = :status AND pc.createdAt <= :cutoffDate AND pc.unsubscribedAt IS NULL AND pc.marketingConsent = true AND pc.retargetingWeek < 4 ORDER BY pc.id ASC")
+    List<PreCustomer> findEligibleForRetargetingAfter(
+        @Param("status") PreCustomer.PreCustomerStatus status,
+        @Param("cutoffDate") LocalDateTime cutoffDate,
+        @Param("afterId") Long afterId,
+        Pageable pageable
+    );
+    
     @Query("SELECT COUNT(pc) FROM PreCustomer pc WHERE pc.status = :status AND pc.createdAt >= :startDate")
     Long countByStatusAndCreatedAtAfter(@Param("status") PreCustomer.PreCustomerStatus status, @Param("startDate") LocalDateTime startDate);
     
@@ -0,0 +1,9 @@
+package com.regabilling.repository;
+
+import com.regabilling.entity.RetargetingCampaignContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RetargetingCampaignContentRepository extends JpaRepository<RetargetingCampaignContent, Long> {
+}
@@ -2,12 +2,15 @@ package com.regabilling.repository;
 
 import com.regabilling.entity.RetargetingCampaign;
 import com.regabilling.entity.PreCustomer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,12 +23,58 @@ public interface RetargetingCampaignRepository extends JpaRepository<Retargeting
         @Param("currentTime") LocalDateTime currentTime
     );
     
+    @Query("SELECT rc.id FROM RetargetingCampaign rc WHERE rc.status = :status AND rc.scheduledAt <= :currentTime ORDER BY rc.scheduledAt ASC")
+    List<Long> findDueCampaignIds(
+        @Param("status") RetargetingCampaign.CampaignStatus status,
+        @Param("currentTime") LocalDateTime currentTime,
+        Pageable pageable
+    );
+    
+    @Modifying
+    @Query("UPDATE RetargetingCampaign rc SET rc.status = :claimedStatus, rc.leaseOwner = :leaseOwner, rc.leaseUntil = :leaseUntil WHERE rc.id IN :ids AND rc.status = :expectedStatus")
+    int claimCampaigns(
+        @Param("ids") Collection<Long> ids,
+        @Param("expectedStatus") RetargetingCampaign.CampaignStatus expectedStatus,
+        @Param("claimedStatus") RetargetingCampaign.CampaignStatus claimedStatus,
+        @Param("leaseOwner") String leaseOwner,
+        @Param("leaseUntil") LocalDateTime leaseUntil
+    );
+    
+    @Query("SELECT rc FROM RetargetingCampaign rc JOIN FETCH rc.preCustomer WHERE rc.leaseOwner = :leaseOwner AND rc.status = :status")
+    List<RetargetingCampaign> findClaimedCampaigns(
+        @Param("leaseOwner") String leaseOwner,
+        @Param("status") RetargetingCampaign.CampaignStatus status
+    );
+    
+    @Modifying
+    @Query("UPDATE RetargetingCampaign rc SET rc.status = :releasedStatus, rc.leaseOwner = NULL, rc.leaseUntil = NULL WHERE rc.id IN :ids AND rc.status = :claimedStatus AND rc.leaseOwner = :leaseOwner")
+    int releaseClaims(
+        @Param("ids") Collection<Long> ids,
+        @Param("leaseOwner") String leaseOwner,
+        @Param("claimedStatus") RetargetingCampaign.CampaignStatus claimedStatus,
+        @Param("releasedStatus") RetargetingCampaign.CampaignStatus releasedStatus
+    );
+    
+    @Modifying
+    @Query("UPDATE RetargetingCampaign rc SET rc.status = :releasedStatus, rc.leaseOwner = NULL, rc.leaseUntil = NULL WHERE rc.status = :claimedStatus AND rc.leaseUntil < :currentTime")
+    int reclaimExpiredLeases(
+        @Param("claimedStatus") RetargetingCampaign.CampaignStatus claimedStatus,
+        @Param("releasedStatus") RetargetingCampaign.CampaignStatus releasedStatus,
+        @Param("currentTime") LocalDateTime currentTime
+    );
+    
     @Query("SELECT rc FROM RetargetingCampaign rc WHERE rc.preCustomer.id = :preCustomerId ORDER BY rc.createdAt DESC")
     List<RetargetingCampaign> findByPreCustomerIdOrderByCreatedAtDesc(@Param("preCustomerId") Long preCustomerId);
     
     @Query("SELECT COUNT(rc) FROM RetargetingCampaign rc WHERE rc.preCustomer = :preCustomer AND rc.campaignWeek = :week")
     Long countByPreCustomerAndCampaignWeek(@Param("preCustomer") PreCustomer preCustomer, @Param("week") Integer week);
     
+    @Query("SELECT DISTINCT rc.preCustomer.id, rc.campaignWeek FROM RetargetingCampaign rc WHERE rc.preCustomer.id IN :preCustomerIds")
+    List<Object[]> findCampaignWeeksByPreCustomerIds(@Param("preCustomerIds") Collection<Long> preCustomerIds);
+    
+    @Query("SELECT rc.id, rc.preCustomer.id, rc.costIncurred FROM RetargetingCampaign rc WHERE rc.id IN :ids")
+    List<Object[]> findTrackingKeysByIds(@Param("ids") Collection<Long> ids);
+    
     @Query("SELECT rc FROM RetargetingCampaign rc WHERE rc.status = :status AND rc.retryCount < 3")
     List<RetargetingCampaign> findFailedCampaignsForRetry(@Param("status") RetargetingCampaign.CampaignStatus status);
     
@@ -0,0 +1,27 @@
+package com.regabilling.repository;
+
+import com.regabilling.entity.RetargetingMetricsRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RetargetingMetricsRollupRepository extends JpaRepository<RetargetingMetricsRollup, Long> {
+    
+    List<RetargetingMetricsRollup> findByGranularityAndBucketStartIn(
+        RetargetingMetricsRollup.Granularity granularity,
+        Collection<LocalDateTime> bucketStarts
+    );
+    
+    @Query("SELECT r FROM RetargetingMetricsRollup r WHERE r.granularity = :granularity AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart ASC")
+    List<RetargetingMetricsRollup> findRange(
+        @Param("granularity") RetargetingMetricsRollup.Granularity granularity,
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to
+    );
+}
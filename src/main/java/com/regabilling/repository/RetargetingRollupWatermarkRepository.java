@@ -0,0 +1,19 @@
+package com.regabilling.repository;
+
+import com.regabilling.entity.RetargetingRollupWatermark;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface RetargetingRollupWatermarkRepository extends JpaRepository<RetargetingRollupWatermark, String> {
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM RetargetingRollupWatermark w WHERE w.name = :name")
+    Optional<RetargetingRollupWatermark> findForUpdate(@Param("name") String name);
+}
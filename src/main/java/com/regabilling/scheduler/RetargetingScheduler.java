@@ -27,7 +27,7 @@ public class RetargetingScheduler {
         }
     }
     
-    @Scheduled(fixedRate = 600000)
+    @Scheduled(fixedDelayString = "${app.retargeting.dispatch.poll-interval-ms:600000}")
     public void executePendingCampaigns() {
         try {
             retargetingService.executePendingCampaigns();
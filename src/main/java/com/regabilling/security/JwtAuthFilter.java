@@ -1,5 +1,6 @@
 package com.regabilling.security;
 
+import com.regabilling.entity.User;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import jakarta.servlet.FilterChain;
@@ -8,6 +9,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -23,8 +25,16 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    private static final WebAuthenticationDetailsSource DETAILS_SOURCE = new WebAuthenticationDetailsSource();
+    
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final UserStatusCache userStatusCache;
+    
+    // claims: principal from verified claims, status from UserStatusCache.
+    // database: load the full User on every request.
+    @Value("${app.jwt.auth-mode:claims}")
+    private String authMode;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) 
@@ -45,16 +55,10 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             final String email = claims.get("email", String.class);
             
             if (StringUtils.hasText(email) && SecurityContextHolder.getContext().getAuthentication() == null) {
-                var userDetails = userDetailsService.loadUserByUsername(email);
-                
-                if (userDetails != null && userDetails.isEnabled()) {
-                    var authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, 
-                        null, 
-                        userDetails.getAuthorities()
-                    );
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                if (isClaimsOnly()) {
+                    authenticateFromClaims(request, claims, email);
+                } else {
+                    authenticateFromDatabase(request, email);
                 }
             }
         } catch (Exception e) {
@@ -63,4 +67,36 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+    
+    private void authenticateFromDatabase(HttpServletRequest request, String email) {
+        var userDetails = userDetailsService.loadUserByUsername(email);
+        
+        if (userDetails != null && userDetails.isEnabled()) {
+            var authToken = new UsernamePasswordAuthenticationToken(
+                userDetails, 
+                null, 
+                userDetails.getAuthorities()
+            );
+            authToken.setDetails(DETAILS_SOURCE.buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+        }
+    }
+    
+    private void authenticateFromClaims(HttpServletRequest request, Claims claims, String email) {
+        if (!User.Status.ACTIVE_PAID.name().equals(claims.get("status", String.class)) || !userStatusCache.isActive(email)) {
+            return;
+        }
+        
+        var authToken = new UsernamePasswordAuthenticationToken(
+            new JwtPrincipal(Long.valueOf(claims.getSubject()), email),
+            null,
+            JwtPrincipal.AUTHORITIES
+        );
+        authToken.setDetails(DETAILS_SOURCE.buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+    
+    private boolean isClaimsOnly() {
+        return !"database".equalsIgnoreCase(authMode);
+    }
 }
@@ -0,0 +1,18 @@
+package com.regabilling.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+// Principal built from verified token claims, without loading the User entity.
+public record JwtPrincipal(Long userId, String email) implements AuthenticatedPrincipal {
+    
+    public static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+    
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -1,12 +1,18 @@
 package com.regabilling.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Map;
@@ -18,11 +24,15 @@ public class JwtService {
     private final String issuer;
     private final int accessTtlMinutes;
     private final Key key;
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
     public JwtService(
             @Value("${app.jwt.issuer}") String issuer,
             @Value("${app.jwt.access-token-ttl-minutes}") int accessTtlMinutes,
-            @Value("${app.jwt.secret}") String secret) {
+            @Value("${app.jwt.secret}") String secret,
+            @Value("${app.jwt.token-cache.max-size:10000}") long tokenCacheSize,
+            MeterRegistry meterRegistry) {
         
         this.issuer = issuer;
         this.accessTtlMinutes = accessTtlMinutes;
@@ -32,6 +42,35 @@ public class JwtService {
         }
         
         this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        
+        // The parser is immutable and thread-safe once built
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .requireIssuer(issuer)
+                .build();
+        
+        // Entries live until the token itself expires, never longer
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(tokenCacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String signature, VerifiedToken token, long currentTime) {
+                        return remainingNanos(token);
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String signature, VerifiedToken token, long currentTime, long currentDuration) {
+                        return remainingNanos(token);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String signature, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified.tokens");
     }
 
     public String generateAccessToken(Long userId, String email, String status) {
@@ -51,11 +90,35 @@ public class JwtService {
                 .compact();
     }
 
+    // Repeated requests with the same bearer token skip HMAC verification and
+    // JSON parsing. The cache is keyed by the signature segment, but a hit only
+    // counts if the whole token matches what was verified.
     public Jws<Claims> parseAndValidate(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .requireIssuer(issuer)
-                .build()
-                .parseClaimsJws(token);
+        String signature = signatureOf(token);
+        if (signature != null) {
+            VerifiedToken cached = verifiedTokens.getIfPresent(signature);
+            if (cached != null && cached.token().equals(token) && cached.expiresAt().isAfter(Instant.now())) {
+                return cached.jws();
+            }
+        }
+        
+        Jws<Claims> jws = parser.parseClaimsJws(token);
+        Date expiration = jws.getBody().getExpiration();
+        if (signature != null && expiration != null) {
+            verifiedTokens.put(signature, new VerifiedToken(token, jws, expiration.toInstant()));
+        }
+        return jws;
+    }
+    
+    private static String signatureOf(String token) {
+        int separator = token.lastIndexOf('.');
+        return separator > 0 && separator < token.length() - 1 ? token.substring(separator + 1) : null;
+    }
+    
+    private static long remainingNanos(VerifiedToken token) {
+        return Math.max(0L, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+    }
+    
+    private record VerifiedToken(String token, Jws<Claims> jws, Instant expiresAt) {
     }
 }
@@ -0,0 +1,155 @@
+package com.regabilling.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-client token buckets in front of the security chain, so abusive
+// traffic is rejected before JWT parsing or password hashing. Buckets live in
+// a bounded Caffeine map per route: a hit is a lock-free map read plus a CAS
+// on the bucket, and idle clients are evicted once their bucket has refilled.
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    private static final String REJECTED_BODY = "{\"message\":\"Too many requests, please retry later\"}";
+    private static final String BEARER_PREFIX = "Bearer ";
+    
+    private final List<Route> routes;
+    private final JwtService jwtService;
+    private final boolean enabled;
+    
+    public RateLimitFilter(
+            List<RoutePolicy> policies,
+            JwtService jwtService,
+            MeterRegistry meterRegistry,
+            @Value("${app.rate-limit.enabled:true}") boolean enabled,
+            @Value("${app.rate-limit.max-keys:100000}") long maxKeys) {
+        
+        this.jwtService = jwtService;
+        this.enabled = enabled;
+        this.routes = new ArrayList<>(policies.size());
+        for (RoutePolicy policy : policies) {
+            routes.add(new Route(policy, maxKeys, meterRegistry));
+        }
+        log.info("🚦 Rate limiting {} with {} route policies", enabled ? "enabled" : "disabled", routes.size());
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        
+        Route route = match(request.getRequestURI());
+        if (route == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        ConsumptionProbe probe = route.bucketFor(keyOf(route.policy.key(), request)).tryConsumeAndReturnRemaining(1);
+        if (probe.isConsumed()) {
+            response.setHeader("X-Rate-Limit-Remaining", Long.toString(probe.getRemainingTokens()));
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        route.rejected.increment();
+        long retryAfterSeconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill()) + 1);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(REJECTED_BODY);
+    }
+    
+    private Route match(String path) {
+        for (Route route : routes) {
+            if (path.startsWith(route.policy.pathPrefix())) {
+                return route;
+            }
+        }
+        return null;
+    }
+    
+    // TOKEN routes key on the user behind a verified token, so minting random
+    // bearer strings neither resets the limit nor floods the bucket map. Missing
+    // or invalid tokens fall back to the client address. Repeat tokens are
+    // answered from JwtService's verified-token cache.
+    // The client address relies on server.forward-headers-strategy to see
+    // through the load balancer.
+    private String keyOf(KeyStrategy strategy, HttpServletRequest request) {
+        if (strategy == KeyStrategy.TOKEN) {
+            String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+            if (header != null && header.startsWith(BEARER_PREFIX)) {
+                try {
+                    return "user:" + jwtService.parseAndValidate(header.substring(BEARER_PREFIX.length())).getBody().getSubject();
+                } catch (Exception e) {
+                    log.debug("Rate limiting unverified bearer token by address: {}", e.getMessage());
+                }
+            }
+        }
+        return request.getRemoteAddr();
+    }
+    
+    public enum KeyStrategy {
+        IP,
+        TOKEN
+    }
+    
+    public record RoutePolicy(String name, String pathPrefix, KeyStrategy key, long capacity, Duration period) {
+    }
+    
+    private static final class Route {
+        
+        private final RoutePolicy policy;
+        private final Bandwidth bandwidth;
+        private final Cache<String, Bucket> buckets;
+        private final Counter rejected;
+        
+        private Route(RoutePolicy policy, long maxKeys, MeterRegistry meterRegistry) {
+            this.policy = policy;
+            // Greedy refill: a bucket idle for a full period is full again, so
+            // evicting it after that long cannot hand a client extra tokens.
+            this.bandwidth = Bandwidth.classic(policy.capacity(), Refill.greedy(policy.capacity(), policy.period()));
+            this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(policy.period())
+                .build();
+            this.rejected = Counter.builder("http.rate.limit.rejected")
+                .tag("route", policy.name())
+                .register(meterRegistry);
+        }
+        
+        private Bucket bucketFor(String key) {
+            return buckets.get(key, k -> Bucket.builder().addLimit(bandwidth).build());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.regabilling.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.regabilling.entity.User;
+import com.regabilling.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+// Revocation check for claims-only authentication: a user's status is read at
+// most once per TTL instead of on every request. Suspending a user through JPA
+// invalidates the entry via UserStatusListener; other writers call invalidate().
+@Component
+public class UserStatusCache {
+    
+    private final UserRepository userRepository;
+    private final Cache<String, User.Status> statuses;
+    
+    public UserStatusCache(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.jwt.status-cache.max-size:10000}") long maxSize,
+            @Value("${app.jwt.status-cache.ttl-seconds:30}") long ttlSeconds) {
+        
+        this.userRepository = userRepository;
+        this.statuses = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, statuses, "jwt.user.status");
+    }
+    
+    public boolean isActive(String email) {
+        return statusOf(email) == User.Status.ACTIVE_PAID;
+    }
+    
+    // Unknown users are cached as DELETED so a token for a removed account
+    // does not reach the database on every request either.
+    public User.Status statusOf(String email) {
+        return statuses.get(email, key -> userRepository.findStatusByEmail(key).orElse(User.Status.DELETED));
+    }
+    
+    // Evicts now and again after the surrounding transaction completes, so a
+    // request that reloads the old status before commit is not cached for a TTL.
+    public void invalidate(String email) {
+        if (email == null) {
+            return;
+        }
+        
+        statuses.invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    statuses.invalidate(email);
+                }
+            });
+        }
+    }
+    
+    public void invalidateAll() {
+        statuses.invalidateAll();
+    }
+}
@@ -0,0 +1,39 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingCampaignContent;
+import com.regabilling.repository.RetargetingCampaignContentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+// Campaign rows no longer carry the personalized body. It is rendered from the
+// campaign's template and recipient at send time; only campaigns without a
+// usable template fall back to the side table, loaded one row at a time.
+@Component
+@RequiredArgsConstructor
+public class CampaignContentRenderer {
+    
+    private final RetargetingTemplateCache templateCache;
+    private final RetargetingCampaignContentRepository contentRepository;
+    
+    public RenderedContent render(RetargetingCampaign campaign) {
+        LocalDateTime now = LocalDateTime.now();
+        
+        RetargetingTemplateCache.CachedTemplate template = templateCache.findById(campaign.getTemplateId()).orElse(null);
+        if (template != null) {
+            return new RenderedContent(
+                template.subject().render(campaign.getPreCustomer(), now),
+                template.body().render(campaign.getPreCustomer(), now)
+            );
+        }
+        
+        RetargetingCampaignContent content = contentRepository.findById(campaign.getId())
+            .orElseThrow(() -> new IllegalStateException("No template or stored content for campaign " + campaign.getId()));
+        return new RenderedContent(content.getEmailSubject(), content.getMessageContent());
+    }
+    
+    public record RenderedContent(String subject, String body) {
+    }
+}
@@ -0,0 +1,229 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CampaignDispatcher {
+    
+    // MySQL claims straight from the ordered index: concurrent nodes block on
+    // each other's row locks and then take the next due rows instead of all
+    // racing for the same top-N ids.
+    private static final String MYSQL_CLAIM_SQL =
+        "UPDATE retargeting_campaigns SET status = 'DISPATCHING', lease_owner = ?, lease_until = ? " +
+        "WHERE status = 'SCHEDULED' AND scheduled_at <= ? ORDER BY scheduled_at LIMIT ?";
+    
+    // Fallback path: a node that loses every candidate to another node
+    // re-reads fresh candidates instead of ending the run.
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+    
+    private final RetargetingCampaignRepository campaignRepository;
+    private final DeliveryPipeline deliveryPipeline;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.retargeting.dispatch.node-id:}")
+    private String configuredNodeId;
+    
+    @Value("${app.retargeting.dispatch.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.retargeting.dispatch.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+    
+    @Value("${app.retargeting.dispatch.lease-seconds:900}")
+    private long leaseSeconds;
+    
+    private String nodeId;
+    
+    private volatile Boolean mysql;
+    
+    @PostConstruct
+    void initNodeId() {
+        if (StringUtils.hasText(configuredNodeId)) {
+            nodeId = configuredNodeId;
+            return;
+        }
+        
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    public int dispatchDueCampaigns() {
+        reclaimExpiredLeases();
+        
+        int dispatched = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            int limit = Math.min(batchSize, deliveryPipeline.remainingCapacity());
+            if (limit <= 0) {
+                log.info("⏸️ Delivery pipeline is full, deferring remaining campaigns to the next run");
+                break;
+            }
+            
+            String claimToken = nodeId + ":" + UUID.randomUUID();
+            List<RetargetingCampaign> claimed = claimBatch(claimToken, limit);
+            if (claimed.isEmpty()) {
+                break;
+            }
+            
+            log.info("🚀 Node {} claimed {} pending campaigns", nodeId, claimed.size());
+            
+            List<Long> rejected = new ArrayList<>();
+            Map<String, List<RetargetingCampaign>> emailBatches = new LinkedHashMap<>();
+            for (RetargetingCampaign campaign : claimed) {
+                if (campaign.getCampaignType() == RetargetingCampaign.CampaignType.EMAIL && campaign.getTemplateId() != null) {
+                    emailBatches.computeIfAbsent(campaign.getTemplateId() + ":" + campaign.getCampaignWeek(), key -> new ArrayList<>())
+                        .add(campaign);
+                } else if (!deliveryPipeline.submit(campaign)) {
+                    rejected.add(campaign.getId());
+                }
+            }
+            // One batch per provider request, so a failed request is retried
+            // without resending to recipients an earlier request reached.
+            for (List<RetargetingCampaign> group : emailBatches.values()) {
+                for (int from = 0; from < group.size(); from += EmailService.MAX_PERSONALIZATIONS_PER_REQUEST) {
+                    List<RetargetingCampaign> emailBatch = List.copyOf(
+                        group.subList(from, Math.min(from + EmailService.MAX_PERSONALIZATIONS_PER_REQUEST, group.size())));
+                    if (!deliveryPipeline.submitEmailBatch(emailBatch)) {
+                        emailBatch.forEach(campaign -> rejected.add(campaign.getId()));
+                    }
+                }
+            }
+            dispatched += claimed.size() - rejected.size();
+            
+            if (!rejected.isEmpty()) {
+                releaseClaims(claimToken, rejected);
+                break;
+            }
+        }
+        
+        if (dispatched == 0) {
+            log.debug("No pending campaigns to execute");
+        }
+        return dispatched;
+    }
+    
+    private void reclaimExpiredLeases() {
+        Integer reclaimed = transactionTemplate.execute(status -> campaignRepository.reclaimExpiredLeases(
+            RetargetingCampaign.CampaignStatus.DISPATCHING,
+            RetargetingCampaign.CampaignStatus.SCHEDULED,
+            LocalDateTime.now()
+        ));
+        
+        if (reclaimed != null && reclaimed > 0) {
+            log.warn("⚠️ Reclaimed {} campaigns with expired dispatch leases", reclaimed);
+        }
+    }
+    
+    // A unique token per claim lets us read back exactly the rows this
+    // claim won, even when other nodes race for the same ids.
+    private List<RetargetingCampaign> claimBatch(String claimToken, int limit) {
+        if (isMySql()) {
+            return claimOrdered(claimToken, limit);
+        }
+        
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+            ClaimResult result = transactionTemplate.execute(status -> claimCandidates(claimToken, limit));
+            if (result == null || result == ClaimResult.NO_WORK) {
+                return List.of();
+            }
+            if (result == ClaimResult.CLAIMED) {
+                return findClaimed(claimToken);
+            }
+            log.debug("Node {} lost the claim race, retrying with fresh candidates", nodeId);
+        }
+        return List.of();
+    }
+    
+    private List<RetargetingCampaign> claimOrdered(String claimToken, int limit) {
+        List<RetargetingCampaign> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            int updated = jdbcTemplate.update(MYSQL_CLAIM_SQL,
+                claimToken, Timestamp.valueOf(now.plusSeconds(leaseSeconds)), Timestamp.valueOf(now), limit);
+            return updated == 0
+                ? List.<RetargetingCampaign>of()
+                : campaignRepository.findClaimedCampaigns(claimToken, RetargetingCampaign.CampaignStatus.DISPATCHING);
+        });
+        return claimed == null ? List.of() : claimed;
+    }
+    
+    private ClaimResult claimCandidates(String claimToken, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> candidateIds = campaignRepository.findDueCampaignIds(
+            RetargetingCampaign.CampaignStatus.SCHEDULED,
+            now,
+            PageRequest.of(0, limit)
+        );
+        
+        if (candidateIds.isEmpty()) {
+            return ClaimResult.NO_WORK;
+        }
+        
+        int updated = campaignRepository.claimCampaigns(
+            candidateIds,
+            RetargetingCampaign.CampaignStatus.SCHEDULED,
+            RetargetingCampaign.CampaignStatus.DISPATCHING,
+            claimToken,
+            now.plusSeconds(leaseSeconds)
+        );
+        
+        return updated == 0 ? ClaimResult.LOST_RACE : ClaimResult.CLAIMED;
+    }
+    
+    private List<RetargetingCampaign> findClaimed(String claimToken) {
+        List<RetargetingCampaign> claimed = transactionTemplate.execute(status ->
+            campaignRepository.findClaimedCampaigns(claimToken, RetargetingCampaign.CampaignStatus.DISPATCHING));
+        return claimed == null ? List.of() : claimed;
+    }
+    
+    private boolean isMySql() {
+        if (mysql == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+            mysql = product != null && product.toLowerCase().contains("mysql");
+        }
+        return mysql;
+    }
+    
+    private void releaseClaims(String claimToken, List<Long> ids) {
+        transactionTemplate.executeWithoutResult(status -> campaignRepository.releaseClaims(
+            ids,
+            claimToken,
+            RetargetingCampaign.CampaignStatus.DISPATCHING,
+            RetargetingCampaign.CampaignStatus.SCHEDULED
+        ));
+        log.warn("⚠️ Delivery pipeline rejected {} campaigns, released them for the next run", ids.size());
+    }
+    
+    private enum ClaimResult {
+        NO_WORK,
+        LOST_RACE,
+        CLAIMED
+    }
+}
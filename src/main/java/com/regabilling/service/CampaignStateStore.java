@@ -0,0 +1,235 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Applies campaign status transitions as narrow UPDATEs keyed by id instead of
+// merging the detached entity, which re-read and rewrote the whole row
+// including the message body. Every UPDATE is guarded by the legal source
+// statuses, so a transition that lost a race simply matches no row.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CampaignStateStore {
+    
+    private static final int MAX_ERROR_LENGTH = 512;
+    
+    private static final String SENT_SQL =
+        "UPDATE retargeting_campaigns SET status = 'SENT', sent_at = ?, delivery_status = 'SENT', external_message_id = ?, " +
+        "lease_owner = NULL, lease_until = NULL, updated_at = ? WHERE id = ? AND status IN (" +
+        sourceList(RetargetingCampaign.CampaignStatus.SENT) + ")";
+    
+    private static final String FAILED_SQL =
+        "UPDATE retargeting_campaigns SET status = 'FAILED', error_message = ?, " +
+        "lease_owner = NULL, lease_until = NULL, updated_at = ? WHERE id = ? AND status IN (" +
+        sourceList(RetargetingCampaign.CampaignStatus.FAILED) + ")";
+    
+    // A delivery receipt can arrive after the open; the timestamp is still
+    // recorded but the status is left alone.
+    private static final String DELIVERED_SQL =
+        "UPDATE retargeting_campaigns SET delivered_at = COALESCE(delivered_at, ?), delivery_status = 'DELIVERED', " +
+        "status = CASE WHEN status IN (" + sourceList(RetargetingCampaign.CampaignStatus.DELIVERED) + ") THEN 'DELIVERED' ELSE status END, " +
+        "updated_at = ? WHERE id = ?";
+    
+    // Only the node still holding the claim may extend it; a reclaimed or
+    // re-claimed campaign matches no row.
+    private static final String RENEW_LEASE_SQL =
+        "UPDATE retargeting_campaigns SET lease_until = ? WHERE id = ? AND status = 'DISPATCHING' AND lease_owner = ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${app.retargeting.state.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.retargeting.dispatch.lease-seconds:900}")
+    private long leaseSeconds;
+    
+    private final ConcurrentLinkedQueue<Transition> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    private Counter ignored;
+    private Counter leaseLost;
+    
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("retargeting.campaign.state.pending", pendingCount, AtomicInteger::get)
+            .register(meterRegistry);
+        ignored = Counter.builder("retargeting.campaign.state.ignored").register(meterRegistry);
+        leaseLost = Counter.builder("retargeting.campaign.lease.lost").register(meterRegistry);
+    }
+    
+    // Status values are constants, so the IN list is inlined into the SQL.
+    public static String sourceList(RetargetingCampaign.CampaignStatus target) {
+        return RetargetingCampaign.CampaignStatus.sourcesOf(target).stream()
+            .map(status -> "'" + status.name() + "'")
+            .collect(Collectors.joining(", "));
+    }
+    
+    // Queued transitions are flushed once a batch fills up or on the next
+    // scheduled flush, whichever comes first.
+    public void enqueue(Transition transition) {
+        pending.add(transition);
+        if (pendingCount.incrementAndGet() >= batchSize && flushLock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+    
+    public void apply(List<Transition> transitions) {
+        if (transitions.isEmpty()) {
+            return;
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<RetargetingCampaign.CampaignStatus, List<Transition>> byTarget = transitions.stream()
+            .collect(Collectors.groupingBy(Transition::target, LinkedHashMap::new, Collectors.toList()));
+        
+        for (Map.Entry<RetargetingCampaign.CampaignStatus, List<Transition>> entry : byTarget.entrySet()) {
+            List<Object[]> rows = new ArrayList<>(entry.getValue().size());
+            for (Transition transition : entry.getValue()) {
+                rows.add(params(transition, now));
+            }
+            
+            int[] updated = jdbcTemplate.batchUpdate(sqlFor(entry.getKey()), rows);
+            for (int count : updated) {
+                if (count == 0) {
+                    ignored.increment();
+                }
+            }
+        }
+    }
+    
+    // Called right before the provider call. Time spent in a full lane queue
+    // or in retry backoff can outlast the claim, and once another node has
+    // reclaimed a campaign it will send it too; renewing here both checks the
+    // claim is still ours and gives the send a full lease to finish in.
+    // Returns the campaigns that are still safe to send.
+    public List<RetargetingCampaign> renewLeases(List<RetargetingCampaign> campaigns) {
+        Timestamp until = Timestamp.valueOf(LocalDateTime.now().plusSeconds(leaseSeconds));
+        List<Object[]> rows = new ArrayList<>(campaigns.size());
+        for (RetargetingCampaign campaign : campaigns) {
+            rows.add(new Object[] { until, campaign.getId(), campaign.getLeaseOwner() });
+        }
+        
+        int[] updated = jdbcTemplate.batchUpdate(RENEW_LEASE_SQL, rows);
+        List<RetargetingCampaign> held = new ArrayList<>(campaigns.size());
+        for (int i = 0; i < campaigns.size(); i++) {
+            if (updated[i] != 0) {
+                held.add(campaigns.get(i));
+            } else {
+                leaseLost.increment();
+                log.warn("⚠️ Dispatch lease for campaign {} was lost, skipping send", campaigns.get(i).getId());
+            }
+        }
+        return held;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.retargeting.state.flush-interval-ms:250}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            drain();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+    
+    private void drain() {
+        while (pendingCount.get() > 0) {
+            List<Transition> batch = new ArrayList<>(batchSize);
+            Transition transition;
+            while (batch.size() < batchSize && (transition = pending.poll()) != null) {
+                batch.add(transition);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-batch.size());
+            
+            try {
+                apply(batch);
+            } catch (Exception e) {
+                // Re-queued rather than dropped: a campaign left in DISPATCHING
+                // would be released by its lease and sent a second time.
+                log.error("❌ Error applying {} campaign state transitions, retrying on next flush: {}", batch.size(), e.getMessage());
+                pending.addAll(batch);
+                pendingCount.addAndGet(batch.size());
+                return;
+            }
+        }
+    }
+    
+    private static String sqlFor(RetargetingCampaign.CampaignStatus target) {
+        return switch (target) {
+            case SENT -> SENT_SQL;
+            case FAILED -> FAILED_SQL;
+            case DELIVERED -> DELIVERED_SQL;
+            default -> throw new IllegalArgumentException("Unsupported campaign transition to " + target);
+        };
+    }
+    
+    private static Object[] params(Transition transition, Timestamp now) {
+        Timestamp at = Timestamp.valueOf(transition.at());
+        return switch (transition.target()) {
+            case SENT -> new Object[] { at, transition.detail(), now, transition.campaignId() };
+            case FAILED -> new Object[] { transition.detail(), now, transition.campaignId() };
+            case DELIVERED -> new Object[] { at, now, transition.campaignId() };
+            default -> throw new IllegalArgumentException("Unsupported campaign transition to " + transition.target());
+        };
+    }
+    
+    public record Transition(
+        Long campaignId,
+        RetargetingCampaign.CampaignStatus target,
+        LocalDateTime at,
+        String detail
+    ) {
+        
+        public static Transition sent(Long campaignId, String externalMessageId) {
+            return new Transition(campaignId, RetargetingCampaign.CampaignStatus.SENT, LocalDateTime.now(), externalMessageId);
+        }
+        
+        public static Transition failed(Long campaignId, String errorMessage) {
+            String message = errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH
+                ? errorMessage.substring(0, MAX_ERROR_LENGTH)
+                : errorMessage;
+            return new Transition(campaignId, RetargetingCampaign.CampaignStatus.FAILED, LocalDateTime.now(), message);
+        }
+        
+        // For provider delivery receipts (SendGrid/Twilio status callbacks)
+        public static Transition delivered(Long campaignId, LocalDateTime deliveredAt) {
+            return new Transition(campaignId, RetargetingCampaign.CampaignStatus.DELIVERED, deliveredAt, null);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.regabilling.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component
+public class ClickLinkSigner {
+    
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 16;
+    private static final Pattern LINK_PATTERN = Pattern.compile("href=\"(https?://[^\"]+)\"");
+    
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+    
+    private final String baseUrl;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    
+    public ClickLinkSigner(
+            @Value("${app.retargeting.tracking.base-url:https://regabilling.com}") String baseUrl,
+            @Value("${app.retargeting.tracking.click-secret}") String secret) {
+        
+        if (secret == null || secret.length() < 32) {
+            throw new IllegalArgumentException("Click signing secret must be at least 32 characters");
+        }
+        
+        this.baseUrl = baseUrl;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+    
+    public String signedLink(Long campaignId, String target) {
+        String encodedTarget = URL_ENCODER.encodeToString(target.getBytes(StandardCharsets.UTF_8));
+        String signature = URL_ENCODER.encodeToString(sign(campaignId, encodedTarget));
+        return baseUrl + "/api/track/click/" + campaignId + "?u=" + encodedTarget + "&s=" + signature;
+    }
+    
+    // Returns the decoded target when the signature matches, otherwise null.
+    public String verify(Long campaignId, String encodedTarget, String signature) {
+        if (encodedTarget == null || signature == null) {
+            return null;
+        }
+        
+        try {
+            byte[] expected = sign(campaignId, encodedTarget);
+            byte[] actual = URL_DECODER.decode(signature);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+            return new String(URL_DECODER.decode(encodedTarget), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    public List<String> findLinks(String html) {
+        List<String> links = new ArrayList<>();
+        Matcher matcher = LINK_PATTERN.matcher(html);
+        while (matcher.find()) {
+            links.add(matcher.group(1).replace("&amp;", "&"));
+        }
+        return links;
+    }
+    
+    // Replaces the i-th link target with the value produced for index i.
+    public String replaceLinks(String html, IntFunction<String> replacement) {
+        Matcher matcher = LINK_PATTERN.matcher(html);
+        StringBuilder out = new StringBuilder(html.length() + 128);
+        int index = 0;
+        while (matcher.find()) {
+            matcher.appendReplacement(out, Matcher.quoteReplacement("href=\"" + replacement.apply(index++) + "\""));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+    
+    public String rewriteLinks(String html, Long campaignId) {
+        List<String> links = findLinks(html);
+        if (links.isEmpty()) {
+            return html;
+        }
+        return replaceLinks(html, index -> signedLink(campaignId, links.get(index)));
+    }
+    
+    private byte[] sign(Long campaignId, String encodedTarget) {
+        Mac mac = macs.get();
+        mac.update(String.valueOf(campaignId).getBytes(StandardCharsets.US_ASCII));
+        mac.update((byte) ':');
+        mac.update(encodedTarget.getBytes(StandardCharsets.US_ASCII));
+        return Arrays.copyOf(mac.doFinal(), SIGNATURE_BYTES);
+    }
+    
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.PreCustomer;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class CompiledTemplate {
+    
+    private static final CompiledTemplate EMPTY = new CompiledTemplate(new String[] {""}, new Placeholder[0]);
+    
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final int literalLength;
+    
+    private CompiledTemplate(String[] literals, Placeholder[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+    
+    public static CompiledTemplate compile(String source) {
+        if (source == null || source.isEmpty()) {
+            return EMPTY;
+        }
+        
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        
+        int position = 0;
+        while (position < source.length()) {
+            int open = source.indexOf("{{", position);
+            int close = open < 0 ? -1 : source.indexOf("}}", open + 2);
+            
+            if (close < 0) {
+                literal.append(source, position, source.length());
+                break;
+            }
+            
+            Placeholder placeholder = Placeholder.fromKey(source.substring(open + 2, close));
+            if (placeholder == null) {
+                literal.append(source, position, close + 2);
+            } else {
+                literal.append(source, position, open);
+                literals.add(literal.toString());
+                placeholders.add(placeholder);
+                literal.setLength(0);
+            }
+            position = close + 2;
+        }
+        literals.add(literal.toString());
+        
+        return new CompiledTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+    
+    public String render(PreCustomer preCustomer, LocalDateTime now) {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+        
+        StringBuilder out = new StringBuilder(literalLength + placeholders.length * 24);
+        out.append(literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            appendValue(out, placeholders[i], preCustomer, now);
+            out.append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+    
+    // SendGrid substitution form: every placeholder becomes a -key- tag that
+    // is filled per personalization, so one request body serves a whole batch.
+    public String toSubstitutionSource() {
+        StringBuilder out = new StringBuilder(literalLength + placeholders.length * 16);
+        out.append(literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(substitutionTag(placeholders[i].key));
+            out.append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+    
+    public void collectSubstitutions(Map<String, String> out, PreCustomer preCustomer, LocalDateTime now) {
+        StringBuilder value = new StringBuilder(32);
+        for (Placeholder placeholder : placeholders) {
+            value.setLength(0);
+            appendValue(value, placeholder, preCustomer, now);
+            out.put(substitutionTag(placeholder.key), value.toString());
+        }
+    }
+    
+    public static String substitutionTag(String key) {
+        return "-" + key + "-";
+    }
+    
+    private static void appendValue(StringBuilder out, Placeholder placeholder, PreCustomer preCustomer, LocalDateTime now) {
+        switch (placeholder) {
+            case NAME -> out.append(preCustomer.getName());
+            case FIRST_NAME -> {
+                String name = preCustomer.getName();
+                int space = name.indexOf(' ');
+                out.append(name, 0, space < 0 ? name.length() : space);
+            }
+            case EMAIL -> out.append(preCustomer.getEmail());
+            case DAYS_SINCE_SIGNUP -> out.append(ChronoUnit.DAYS.between(preCustomer.getCreatedAt(), now));
+            case SIGNUP_DATE -> out.append(preCustomer.getCreatedAt().toLocalDate());
+        }
+    }
+    
+    enum Placeholder {
+        NAME("name"),
+        FIRST_NAME("firstName"),
+        EMAIL("email"),
+        DAYS_SINCE_SIGNUP("daysSinceSignup"),
+        SIGNUP_DATE("signupDate");
+        
+        private final String key;
+        
+        Placeholder(String key) {
+            this.key = key;
+        }
+        
+        static Placeholder fromKey(String key) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.key.equals(key)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+}
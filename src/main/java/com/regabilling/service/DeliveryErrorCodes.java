@@ -0,0 +1,60 @@
+package com.regabilling.service;
+
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Maps provider failures to short, groupable codes for retargeting_metrics.error_code;
+// the full message already lives on the campaign's error_message.
+final class DeliveryErrorCodes {
+    
+    private static final int MAX_LENGTH = 64;
+    private static final Pattern STATUS_PATTERN = Pattern.compile("returned status: (\\d{3})");
+    
+    private DeliveryErrorCodes() {
+    }
+    
+    static String of(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException response) {
+                return "HTTP_" + response.getStatusCode().value();
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return "TIMEOUT";
+            }
+            if (cause instanceof UnknownHostException) {
+                return "UNKNOWN_HOST";
+            }
+            if (cause.getCause() == null) {
+                String code = of(cause.getMessage());
+                return code != null ? code : truncate(cause.getClass().getSimpleName().toUpperCase(Locale.ROOT));
+            }
+        }
+        return null;
+    }
+    
+    // Also used to backfill legacy rows, which only kept the exception message.
+    static String of(String message) {
+        if (message == null || message.isBlank()) {
+            return null;
+        }
+        Matcher matcher = STATUS_PATTERN.matcher(message);
+        if (matcher.find()) {
+            return "HTTP_" + matcher.group(1);
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        if (lower.contains("timed out") || lower.contains("timeout")) {
+            return "TIMEOUT";
+        }
+        return null;
+    }
+    
+    private static String truncate(String code) {
+        return code.length() > MAX_LENGTH ? code.substring(0, MAX_LENGTH) : code;
+    }
+}
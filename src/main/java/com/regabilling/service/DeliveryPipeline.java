@@ -0,0 +1,276 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DeliveryPipeline {
+    
+    private final MessageDeliveryService messageDeliveryService;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${app.delivery.executor:platform}")
+    private String executorMode;
+    
+    @Value("${app.delivery.email.workers:8}")
+    private int emailWorkers;
+    
+    @Value("${app.delivery.email.queue-capacity:1000}")
+    private int emailQueueCapacity;
+    
+    @Value("${app.delivery.sms.workers:4}")
+    private int smsWorkers;
+    
+    @Value("${app.delivery.sms.queue-capacity:500}")
+    private int smsQueueCapacity;
+    
+    @Value("${app.delivery.retry.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${app.delivery.retry.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+    
+    @Value("${app.delivery.retry.multiplier:2.0}")
+    private double backoffMultiplier;
+    
+    private final Map<RetargetingCampaign.CampaignType, DeliveryLane> lanes =
+        new EnumMap<>(RetargetingCampaign.CampaignType.class);
+    
+    private ScheduledExecutorService retryScheduler;
+    
+    @PostConstruct
+    void start() {
+        log.info("📮 Starting delivery pipeline with {} threads", isVirtual() ? "virtual" : "platform");
+        lanes.put(RetargetingCampaign.CampaignType.EMAIL, new DeliveryLane("email", emailWorkers, emailQueueCapacity));
+        lanes.put(RetargetingCampaign.CampaignType.SMS, new DeliveryLane("sms", smsWorkers, smsQueueCapacity));
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("delivery-retry-"));
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        retryScheduler.shutdownNow();
+        for (DeliveryLane lane : lanes.values()) {
+            lane.executor.shutdown();
+        }
+        for (DeliveryLane lane : lanes.values()) {
+            if (!lane.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("⚠️ Delivery lane {} did not drain within 30s", lane.channel);
+            }
+        }
+    }
+    
+    public int remainingCapacity() {
+        int remaining = Integer.MAX_VALUE;
+        for (DeliveryLane lane : lanes.values()) {
+            remaining = Math.min(remaining, lane.remainingCapacity());
+        }
+        return remaining;
+    }
+    
+    public boolean submit(RetargetingCampaign campaign) {
+        return submit(List.of(campaign), 1);
+    }
+    
+    // One lane slot carries the whole batch, so a single provider request
+    // covers every campaign that shares the template and week.
+    public boolean submitEmailBatch(List<RetargetingCampaign> campaigns) {
+        return submit(campaigns, 1);
+    }
+    
+    private boolean submit(List<RetargetingCampaign> campaigns, int attempt) {
+        DeliveryLane lane = lanes.get(campaigns.get(0).getCampaignType());
+        if (lane.offer(() -> deliver(lane, campaigns, attempt))) {
+            return true;
+        }
+        lane.rejected.increment();
+        return false;
+    }
+    
+    private void deliver(DeliveryLane lane, List<RetargetingCampaign> campaigns, int attempt) {
+        lane.inFlight.incrementAndGet();
+        try {
+            if (campaigns.size() == 1) {
+                deliverOne(campaigns.get(0), attempt);
+                return;
+            }
+            
+            // Only pre-send and provider failures reach this catch; once the
+            // provider accepts the batch its bookkeeping cannot fail the send.
+            List<RetargetingCampaign> unbatched;
+            try {
+                unbatched = messageDeliveryService.deliverEmailBatch(campaigns);
+            } catch (Exception e) {
+                handleFailure(campaigns, attempt, e);
+                return;
+            }
+            for (RetargetingCampaign campaign : unbatched) {
+                deliverOne(campaign, attempt);
+            }
+        } finally {
+            lane.inFlight.decrementAndGet();
+        }
+    }
+    
+    private void deliverOne(RetargetingCampaign campaign, int attempt) {
+        try {
+            messageDeliveryService.deliver(campaign);
+        } catch (Exception e) {
+            handleFailure(List.of(campaign), attempt, e);
+        }
+    }
+    
+    private void handleFailure(List<RetargetingCampaign> campaigns, int attempt, Exception cause) {
+        if (attempt < maxAttempts) {
+            scheduleRetry(campaigns, attempt, cause);
+        } else {
+            markFailed(campaigns, cause);
+        }
+    }
+    
+    private void scheduleRetry(List<RetargetingCampaign> campaigns, int attempt, Exception cause) {
+        long delay = (long) (initialBackoffMs * Math.pow(backoffMultiplier, attempt - 1));
+        log.warn("🔄 Delivery attempt {} failed for {} campaign(s) starting at {}, retrying in {} ms: {}",
+            attempt, campaigns.size(), campaigns.get(0).getId(), delay, cause.getMessage());
+        
+        try {
+            retryScheduler.schedule(() -> {
+                if (!submit(campaigns, attempt + 1)) {
+                    markFailed(campaigns, cause);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            markFailed(campaigns, cause);
+        }
+    }
+    
+    private void markFailed(List<RetargetingCampaign> campaigns, Exception cause) {
+        for (RetargetingCampaign campaign : campaigns) {
+            messageDeliveryService.markFailed(campaign, cause);
+        }
+    }
+    
+    private boolean isVirtual() {
+        return "virtual".equalsIgnoreCase(executorMode);
+    }
+    
+    // Platform mode: a fixed worker pool in front of a bounded queue.
+    // Virtual mode: one virtual thread per send; an admission semaphore bounds
+    // queued work and a provider semaphore caps concurrent calls to SendGrid/Twilio.
+    private final class DeliveryLane {
+        
+        private final String channel;
+        private final ExecutorService executor;
+        private final BlockingQueue<Runnable> queue;
+        private final Semaphore admission;
+        private final Semaphore providerPermits;
+        private final int admissionCapacity;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter rejected;
+        
+        private DeliveryLane(String channel, int workers, int queueCapacity) {
+            this.channel = channel;
+            
+            if (isVirtual()) {
+                this.queue = null;
+                this.admissionCapacity = queueCapacity + workers;
+                this.admission = new Semaphore(admissionCapacity);
+                this.providerPermits = new Semaphore(workers);
+                this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("delivery-" + channel + "-", 0).factory()
+                );
+            } else {
+                this.queue = new ArrayBlockingQueue<>(queueCapacity);
+                this.admissionCapacity = 0;
+                this.admission = null;
+                this.providerPermits = null;
+                this.executor = new ThreadPoolExecutor(
+                    workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    queue,
+                    new CustomizableThreadFactory("delivery-" + channel + "-"),
+                    new ThreadPoolExecutor.AbortPolicy()
+                );
+            }
+            
+            Gauge.builder("retargeting.delivery.queue.depth", this, DeliveryLane::queueDepth)
+                .tag("channel", channel)
+                .register(meterRegistry);
+            Gauge.builder("retargeting.delivery.in.flight", inFlight, AtomicInteger::get)
+                .tag("channel", channel)
+                .register(meterRegistry);
+            this.rejected = Counter.builder("retargeting.delivery.rejected")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        }
+        
+        private boolean offer(Runnable task) {
+            if (queue != null) {
+                try {
+                    executor.execute(task);
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    return false;
+                }
+            }
+            
+            if (!admission.tryAcquire()) {
+                return false;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        providerPermits.acquire();
+                        try {
+                            task.run();
+                        } finally {
+                            providerPermits.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        admission.release();
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                admission.release();
+                return false;
+            }
+        }
+        
+        private int remainingCapacity() {
+            return queue != null ? queue.remainingCapacity() : admission.availablePermits();
+        }
+        
+        private double queueDepth() {
+            if (queue != null) {
+                return queue.size();
+            }
+            return Math.max(0, admissionCapacity - admission.availablePermits() - inFlight.get());
+        }
+    }
+}
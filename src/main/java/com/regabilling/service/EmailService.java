@@ -5,10 +5,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.UUID;
 
 @Service
@@ -16,7 +17,13 @@ import java.util.UUID;
 @Slf4j
 public class EmailService {
     
-    private final RestTemplate restTemplate;
+    public static final int MAX_PERSONALIZATIONS_PER_REQUEST = 1000;
+    
+    private final ProviderHttpClient providerHttpClient;
+    private final SendGridPayloadWriter payloadWriter;
+    
+    @Value("${app.email.sendgrid.base-url:https://api.sendgrid.com}")
+    private String sendGridBaseUrl;
     
     @Value("${app.email.sendgrid.api-key:mock-api-key}")
     private String sendGridApiKey;
@@ -38,6 +45,27 @@ public class EmailService {
         return sendViaSendGrid(toEmail, subject, content, recipientName);
     }
     
+    // Exactly one provider request per call: callers split batches at
+    // MAX_PERSONALIZATIONS_PER_REQUEST, so a failure and its retry only ever
+    // cover recipients SendGrid has not accepted.
+    public Map<Long, String> sendRetargetingEmails(String content, List<BatchRecipient> recipients) {
+        if (recipients.size() > MAX_PERSONALIZATIONS_PER_REQUEST) {
+            throw new IllegalArgumentException("Email batch of " + recipients.size() +
+                " recipients exceeds " + MAX_PERSONALIZATIONS_PER_REQUEST + " personalizations");
+        }
+        
+        String requestMessageId = mockMode ? sendMockBatch(content, recipients) : sendBatchViaSendGrid(content, recipients);
+        
+        // SendGrid returns one X-Message-Id per request; the campaign id
+        // suffix keeps each stored id unique and matches the custom_args
+        // echoed back on event webhooks.
+        Map<Long, String> messageIds = new LinkedHashMap<>();
+        for (BatchRecipient recipient : recipients) {
+            messageIds.put(recipient.campaignId(), requestMessageId + "#" + recipient.campaignId());
+        }
+        return messageIds;
+    }
+    
     private String sendMockEmail(String toEmail, String subject, String content, String recipientName) {
         String mockMessageId = "mock_email_" + UUID.randomUUID().toString().substring(0, 8);
         
@@ -58,18 +86,63 @@ public class EmailService {
         return mockMessageId;
     }
     
+    private String sendMockBatch(String content, List<BatchRecipient> recipients) {
+        String mockMessageId = "mock_email_" + UUID.randomUUID().toString().substring(0, 8);
+        
+        log.info("📧 MOCK EMAIL BATCH - Retargeting Campaign");
+        log.info("   ✉️  Recipients: {}", recipients.size());
+        log.info("   📄 Content Length: {} chars", content.length());
+        log.info("   🆔 Message ID: {}", mockMessageId);
+        log.info("   ⏰ Sent at: {}", java.time.LocalDateTime.now());
+        
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        return mockMessageId;
+    }
+    
+    private String sendBatchViaSendGrid(String content, List<BatchRecipient> recipients) {
+        try {
+            String url = sendGridBaseUrl + "/v3/mail/send";
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setBearerAuth(sendGridApiKey);
+            
+            byte[] emailPayload = payloadWriter.write(createSendGridBatchMail(content, recipients));
+            
+            HttpEntity<byte[]> request = new HttpEntity<>(emailPayload, headers);
+            ResponseEntity<String> response = providerHttpClient.post(url, request);
+            
+            if (response.getStatusCode().is2xxSuccessful()) {
+                String messageId = response.getHeaders().getFirst("X-Message-Id");
+                log.info("📧 Email batch sent via SendGrid to {} recipients", recipients.size());
+                return messageId != null ? messageId : "sendgrid_" + UUID.randomUUID().toString().substring(0, 8);
+            } else {
+                throw new RuntimeException("SendGrid API returned status: " + response.getStatusCode());
+            }
+            
+        } catch (Exception e) {
+            log.error("❌ SendGrid email batch failed for {} recipients: {}", recipients.size(), e.getMessage());
+            throw new RuntimeException("Email batch sending failed: " + e.getMessage(), e);
+        }
+    }
+    
     private String sendViaSendGrid(String toEmail, String subject, String content, String recipientName) {
         try {
-            String url = "https://api.sendgrid.com/v3/mail/send";
+            String url = sendGridBaseUrl + "/v3/mail/send";
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             headers.setBearerAuth(sendGridApiKey);
             
-            Map<String, Object> emailPayload = createSendGridPayload(toEmail, subject, content, recipientName);
+            byte[] emailPayload = payloadWriter.write(createSendGridMail(toEmail, subject, content, recipientName));
             
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(emailPayload, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
+            HttpEntity<byte[]> request = new HttpEntity<>(emailPayload, headers);
+            ResponseEntity<String> response = providerHttpClient.post(url, request);
             
             if (response.getStatusCode().is2xxSuccessful()) {
                 String messageId = response.getHeaders().getFirst("X-Message-Id");
@@ -85,39 +158,40 @@ public class EmailService {
         }
     }
     
-    private Map<String, Object> createSendGridPayload(String toEmail, String subject, String content, String recipientName) {
-        Map<String, Object> payload = new HashMap<>();
-        
-        Map<String, String> from = new HashMap<>();
-        from.put("email", fromEmail);
-        from.put("name", fromName);
-        payload.put("from", from);
-        
-        Map<String, String> to = new HashMap<>();
-        to.put("email", toEmail);
-        to.put("name", recipientName);
-        
-        Map<String, Object> personalization = new HashMap<>();
-        personalization.put("to", new Object[]{to});
-        personalization.put("subject", subject);
-        payload.put("personalizations", new Object[]{personalization});
-        
-        Map<String, String> contentMap = new HashMap<>();
-        contentMap.put("type", "text/html");
-        contentMap.put("value", content);
-        payload.put("content", new Object[]{contentMap});
-        
-        Map<String, Object> tracking = new HashMap<>();
-        Map<String, Boolean> openTracking = new HashMap<>();
-        openTracking.put("enable", true);
-        tracking.put("open_tracking", openTracking);
-        
-        Map<String, Boolean> clickTracking = new HashMap<>();
-        clickTracking.put("enable", true);
-        tracking.put("click_tracking", clickTracking);
-        
-        payload.put("tracking_settings", tracking);
+    private SendGridMail createSendGridMail(String toEmail, String subject, String content, String recipientName) {
+        return new SendGridMail(
+            new SendGridMail.Address(fromEmail, fromName),
+            List.of(SendGridMail.Personalization.single(new SendGridMail.Address(toEmail, recipientName), subject)),
+            MediaType.TEXT_HTML_VALUE,
+            content
+        );
+    }
+    
+    private SendGridMail createSendGridBatchMail(String content, List<BatchRecipient> recipients) {
+        List<SendGridMail.Personalization> personalizations = new ArrayList<>(recipients.size());
+        for (BatchRecipient recipient : recipients) {
+            personalizations.add(new SendGridMail.Personalization(
+                List.of(new SendGridMail.Address(recipient.toEmail(), recipient.recipientName())),
+                recipient.subject(),
+                recipient.substitutions(),
+                Map.of("campaign_id", String.valueOf(recipient.campaignId()))
+            ));
+        }
         
-        return payload;
+        return new SendGridMail(
+            new SendGridMail.Address(fromEmail, fromName),
+            personalizations,
+            MediaType.TEXT_HTML_VALUE,
+            content
+        );
+    }
+    
+    public record BatchRecipient(
+        Long campaignId,
+        String toEmail,
+        String recipientName,
+        String subject,
+        Map<String, String> substitutions
+    ) {
     }
 }
@@ -2,89 +2,164 @@ package com.regabilling.service;
 
 import com.regabilling.entity.RetargetingCampaign;
 import com.regabilling.entity.RetargetingMetrics;
-import com.regabilling.repository.RetargetingCampaignRepository;
-import com.regabilling.repository.RetargetingMetricsRepository;
+import com.regabilling.entity.RetargetingTemplate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MessageDeliveryService {
     
+    private static final String CAMPAIGN_ID_KEY = "campaignId";
+    private static final String PRE_CUSTOMER_ID_KEY = "preCustomerId";
+    private static final String CLICK_KEY_PREFIX = "click";
+    
     private final EmailService emailService;
     private final SmsService smsService;
-    private final RetargetingCampaignRepository campaignRepository;
-    private final RetargetingMetricsRepository metricsRepository;
+    private final CampaignStateStore campaignStateStore;
+    private final RetargetingMetricsSink metricsSink;
+    private final RetargetingTemplateCache templateCache;
+    private final ClickLinkSigner clickLinkSigner;
+    private final CampaignContentRenderer contentRenderer;
     
-    @Async
-    @Transactional
-    @Retryable(value = {Exception.class}, maxAttempts = 3, backoff = @Backoff(delay = 1000, multiplier = 2))
-    public CompletableFuture<Void> sendEmailWithRetry(RetargetingCampaign campaign) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                log.info("📧 Sending email for campaign {}", campaign.getId());
-                
-                String messageId = emailService.sendRetargetingEmail(
-                    campaign.getPreCustomer().getEmail(),
-                    campaign.getEmailSubject(),
-                    enrichEmailContent(campaign),
-                    campaign.getPreCustomer().getName()
-                );
-                
-                updateCampaignSuccess(campaign, messageId, RetargetingCampaign.CampaignStatus.SENT);
-                recordMetric(RetargetingMetrics.EventType.EMAIL_SENT, campaign, messageId);
-                
-                log.info("✅ Email sent successfully for campaign {}", campaign.getId());
-                
-            } catch (Exception e) {
-                log.error("❌ Email delivery failed for campaign {}: {}", campaign.getId(), e.getMessage());
-                updateCampaignFailure(campaign, e.getMessage());
-                recordMetric(RetargetingMetrics.EventType.EMAIL_FAILED, campaign, e.getMessage());
-                throw new RuntimeException("Email delivery failed", e);
-            }
-        });
+    // Same base as the signed click links, so every tracking URL points at
+    // the environment that sent the message.
+    @Value("${app.retargeting.tracking.base-url:https://regabilling.com}")
+    private String trackingBaseUrl;
+    
+    public void deliver(RetargetingCampaign campaign) {
+        if (campaignStateStore.renewLeases(List.of(campaign)).isEmpty()) {
+            return;
+        }
+        
+        if (campaign.getCampaignType() == RetargetingCampaign.CampaignType.EMAIL) {
+            sendEmail(campaign);
+        } else {
+            sendSms(campaign);
+        }
     }
     
-    @Async
-    @Transactional
-    @Retryable(value = {Exception.class}, maxAttempts = 3, backoff = @Backoff(delay = 500, multiplier = 2))
-    public CompletableFuture<Void> sendSmsWithRetry(RetargetingCampaign campaign) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                log.info("📱 Sending SMS for campaign {}", campaign.getId());
-                
-                String messageId = smsService.sendRetargetingSms(
-                    campaign.getPreCustomer().getPhone(),
-                    campaign.getMessageContent()
-                );
-                
-                updateCampaignSuccess(campaign, messageId, RetargetingCampaign.CampaignStatus.SENT);
-                recordMetric(RetargetingMetrics.EventType.SMS_SENT, campaign, messageId);
-                
-                log.info("✅ SMS sent successfully for campaign {}", campaign.getId());
-                
-            } catch (Exception e) {
-                log.error("❌ SMS delivery failed for campaign {}: {}", campaign.getId(), e.getMessage());
-                updateCampaignFailure(campaign, e.getMessage());
-                recordMetric(RetargetingMetrics.EventType.SMS_FAILED, campaign, e.getMessage());
-                throw new RuntimeException("SMS delivery failed", e);
+    // Campaigns must share an email template and week. Any whose template is
+    // no longer the active one for that week are returned so the caller can
+    // send them one by one, rendered from the template they were planned with.
+    public List<RetargetingCampaign> deliverEmailBatch(List<RetargetingCampaign> campaigns) {
+        RetargetingCampaign first = campaigns.get(0);
+        RetargetingTemplateCache.CachedTemplate template = templateCache
+            .find(RetargetingTemplate.TemplateType.EMAIL, first.getCampaignWeek())
+            .orElse(null);
+        
+        if (template == null || !template.id().equals(first.getTemplateId())) {
+            return campaigns;
+        }
+        
+        campaigns = campaignStateStore.renewLeases(campaigns);
+        if (campaigns.isEmpty()) {
+            return List.of();
+        }
+        
+        log.info("📧 Sending email batch of {} campaigns for template {}", campaigns.size(), template.id());
+        
+        String body = template.body().toSubstitutionSource();
+        List<String> links = clickLinkSigner.findLinks(body);
+        
+        String content = clickLinkSigner.replaceLinks(body, index -> CompiledTemplate.substitutionTag(CLICK_KEY_PREFIX + index))
+            + generateTrackingPixel(CompiledTemplate.substitutionTag(CAMPAIGN_ID_KEY))
+            + generateUnsubscribeLink(CompiledTemplate.substitutionTag(PRE_CUSTOMER_ID_KEY));
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailService.BatchRecipient> recipients = new ArrayList<>(campaigns.size());
+        for (RetargetingCampaign campaign : campaigns) {
+            Map<String, String> substitutions = new HashMap<>();
+            template.body().collectSubstitutions(substitutions, campaign.getPreCustomer(), now);
+            substitutions.put(CompiledTemplate.substitutionTag(CAMPAIGN_ID_KEY), String.valueOf(campaign.getId()));
+            substitutions.put(CompiledTemplate.substitutionTag(PRE_CUSTOMER_ID_KEY), String.valueOf(campaign.getPreCustomer().getId()));
+            for (int i = 0; i < links.size(); i++) {
+                String target = resolveLink(links.get(i), substitutions);
+                substitutions.put(CompiledTemplate.substitutionTag(CLICK_KEY_PREFIX + i), clickLinkSigner.signedLink(campaign.getId(), target));
             }
-        });
+            
+            recipients.add(new EmailService.BatchRecipient(
+                campaign.getId(),
+                campaign.getPreCustomer().getEmail(),
+                campaign.getPreCustomer().getName(),
+                template.subject().render(campaign.getPreCustomer(), now),
+                substitutions
+            ));
+        }
+        
+        Map<Long, String> messageIds = emailService.sendRetargetingEmails(content, recipients);
+        
+        for (RetargetingCampaign campaign : campaigns) {
+            recordSent(campaign, RetargetingMetrics.EventType.EMAIL_SENT, messageIds.get(campaign.getId()));
+        }
+        
+        log.info("✅ Email batch sent successfully for {} campaigns", campaigns.size());
+        return List.of();
+    }
+    
+    public void markFailed(RetargetingCampaign campaign, Exception error) {
+        boolean email = campaign.getCampaignType() == RetargetingCampaign.CampaignType.EMAIL;
+        log.error("❌ {} delivery failed for campaign {}: {}", email ? "Email" : "SMS", campaign.getId(), error.getMessage());
+        
+        campaignStateStore.enqueue(CampaignStateStore.Transition.failed(campaign.getId(), error.getMessage()));
+        metricsSink.recordFailure(email ? RetargetingMetrics.EventType.EMAIL_FAILED : RetargetingMetrics.EventType.SMS_FAILED,
+            campaign, DeliveryErrorCodes.of(error));
+    }
+    
+    private void sendEmail(RetargetingCampaign campaign) {
+        log.info("📧 Sending email for campaign {}", campaign.getId());
+        
+        CampaignContentRenderer.RenderedContent content = contentRenderer.render(campaign);
+        String messageId = emailService.sendRetargetingEmail(
+            campaign.getPreCustomer().getEmail(),
+            content.subject(),
+            enrichEmailContent(campaign, content.body()),
+            campaign.getPreCustomer().getName()
+        );
+        
+        recordSent(campaign, RetargetingMetrics.EventType.EMAIL_SENT, messageId);
+        
+        log.info("✅ Email sent successfully for campaign {}", campaign.getId());
+    }
+    
+    private void sendSms(RetargetingCampaign campaign) {
+        log.info("📱 Sending SMS for campaign {}", campaign.getId());
+        
+        String messageId = smsService.sendRetargetingSms(
+            campaign.getPreCustomer().getPhone(),
+            contentRenderer.render(campaign).body()
+        );
+        
+        recordSent(campaign, RetargetingMetrics.EventType.SMS_SENT, messageId);
+        
+        log.info("✅ SMS sent successfully for campaign {}", campaign.getId());
+    }
+    
+    // Runs once the provider has accepted the message. Nothing here may throw
+    // back into DeliveryPipeline, which would treat it as a failed send and
+    // deliver the message again; the queued transition is retried by the store.
+    private void recordSent(RetargetingCampaign campaign, RetargetingMetrics.EventType eventType, String messageId) {
+        try {
+            campaignStateStore.enqueue(CampaignStateStore.Transition.sent(campaign.getId(), messageId));
+            metricsSink.record(eventType, campaign, messageId);
+        } catch (Exception e) {
+            log.error("❌ Error recording sent campaign {}, not resending: {}", campaign.getId(), e.getMessage());
+        }
     }
     
-    private String enrichEmailContent(RetargetingCampaign campaign) {
-        String content = campaign.getMessageContent();
-        String trackingPixel = generateTrackingPixel(campaign.getId());
-        String unsubscribeLink = generateUnsubscribeLink(campaign.getPreCustomer().getId());
+    private String enrichEmailContent(RetargetingCampaign campaign, String body) {
+        String content = clickLinkSigner.rewriteLinks(body, campaign.getId());
+        String trackingPixel = generateTrackingPixel(String.valueOf(campaign.getId()));
+        String unsubscribeLink = generateUnsubscribeLink(String.valueOf(campaign.getPreCustomer().getId()));
         
         content += trackingPixel;
         content += unsubscribeLink;
@@ -92,48 +167,31 @@ public class MessageDeliveryService {
         return content;
     }
     
-    private String generateTrackingPixel(Long campaignId) {
+    // Links in the template may themselves carry placeholders; sign the
+    // recipient's resolved URL rather than the substitution tag.
+    private static String resolveLink(String link, Map<String, String> substitutions) {
+        String resolved = link;
+        for (Map.Entry<String, String> substitution : substitutions.entrySet()) {
+            if (resolved.contains(substitution.getKey())) {
+                resolved = resolved.replace(substitution.getKey(), substitution.getValue());
+            }
+        }
+        return resolved;
+    }
+    
+    private String generateTrackingPixel(String campaignId) {
         return String.format(
-            "<img src=\"https://regabilling.com/api/track/open/%d\" width=\"1\" height=\"1\" style=\"display:none;\" alt=\"\" />",
+            "<img src=\"%s/api/track/open/%s\" width=\"1\" height=\"1\" style=\"display:none;\" alt=\"\" />",
+            trackingBaseUrl,
             campaignId
         );
     }
     
-    private String generateUnsubscribeLink(Long preCustomerId) {
+    private String generateUnsubscribeLink(String preCustomerId) {
         return String.format(
-            "<br><br><center><p style=\"font-size:12px;color:#666;\"><a href=\"https://regabilling.com/api/unsubscribe/%d\" style=\"color:#666;\">Unsubscribe</a></p></center>",
+            "<br><br><center><p style=\"font-size:12px;color:#666;\"><a href=\"%s/api/unsubscribe/%s\" style=\"color:#666;\">Unsubscribe</a></p></center>",
+            trackingBaseUrl,
             preCustomerId
         );
     }
-    
-    private void updateCampaignSuccess(RetargetingCampaign campaign, String messageId, RetargetingCampaign.CampaignStatus status) {
-        campaign.setExternalMessageId(messageId);
-        campaign.setStatus(status);
-        campaign.setSentAt(LocalDateTime.now());
-        campaign.setDeliveryStatus("SENT");
-        campaignRepository.save(campaign);
-    }
-    
-    private void updateCampaignFailure(RetargetingCampaign campaign, String error) {
-        campaign.setStatus(RetargetingCampaign.CampaignStatus.FAILED);
-        campaign.setErrorMessage(error);
-        campaignRepository.save(campaign);
-    }
-    
-    private void recordMetric(RetargetingMetrics.EventType eventType, RetargetingCampaign campaign, String metadata) {
-        try {
-            RetargetingMetrics metric = RetargetingMetrics.builder()
-                .campaignId(campaign.getId())
-                .preCustomerId(campaign.getPreCustomer().getId())
-                .eventType(eventType)
-                .eventTimestamp(LocalDateTime.now())
-                .metadata(metadata)
-                .costIncurred(campaign.getCostIncurred())
-                .build();
-                
-            metricsRepository.save(metric);
-        } catch (Exception e) {
-            log.error("❌ Error recording metric: {}", e.getMessage(), e);
-        }
-    }
 }
@@ -0,0 +1,99 @@
+package com.regabilling.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.regabilling.entity.MetricDictionaryEntry;
+import com.regabilling.repository.MetricDictionaryRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MetricDictionary {
+    
+    private static final int MAX_VALUE_LENGTH = 2048;
+    
+    private final MetricDictionaryRepository dictionaryRepository;
+    private final PlatformTransactionManager transactionManager;
+    
+    @Value("${app.retargeting.metrics.dictionary-cache-size:100000}")
+    private int cacheSize;
+    
+    private final Map<MetricDictionaryEntry.Kind, Cache<String, Long>> ids = new EnumMap<>(MetricDictionaryEntry.Kind.class);
+    private TransactionTemplate requiresNew;
+    
+    @PostConstruct
+    void init() {
+        for (MetricDictionaryEntry.Kind kind : MetricDictionaryEntry.Kind.values()) {
+            ids.put(kind, Caffeine.newBuilder().maximumSize(cacheSize).build());
+        }
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    // Hot values (a handful of mail clients, the links of live templates) are
+    // answered from memory. The cache is bounded and evicts by frequency, so
+    // one-off values cannot push the hot set out and force a round trip on
+    // the metrics writer.
+    public Long intern(MetricDictionaryEntry.Kind kind, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        
+        String normalized = value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) : value;
+        Cache<String, Long> cached = ids.get(kind);
+        Long id = cached.getIfPresent(normalized);
+        if (id != null) {
+            return id;
+        }
+        
+        // Resolved outside the cache's compute lock, which must not span a DB round trip
+        id = findOrCreate(kind, normalized);
+        cached.put(normalized, id);
+        return id;
+    }
+    
+    // Runs in its own transaction so a unique-key race with another node only
+    // costs a re-read instead of rolling back the caller's batch.
+    private Long findOrCreate(MetricDictionaryEntry.Kind kind, String value) {
+        String hash = sha256(value);
+        try {
+            return requiresNew.execute(status -> dictionaryRepository.findByKindAndValueHash(kind, hash)
+                .map(MetricDictionaryEntry::getId)
+                .orElseGet(() -> dictionaryRepository.saveAndFlush(MetricDictionaryEntry.builder()
+                    .kind(kind)
+                    .valueHash(hash)
+                    .entryValue(value)
+                    .build()).getId()));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Dictionary value for {} was interned concurrently, re-reading", kind);
+            return requiresNew.execute(status -> dictionaryRepository.findByKindAndValueHash(kind, hash)
+                .map(MetricDictionaryEntry::getId)
+                .orElseThrow(() -> e));
+        }
+    }
+    
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.regabilling.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+@RequiredArgsConstructor
+public class ProviderHttpClient {
+    
+    private final RestTemplate restTemplate;
+    
+    public ResponseEntity<String> post(String url, HttpEntity<?> request) {
+        return restTemplate.postForEntity(url, request, String.class);
+    }
+}
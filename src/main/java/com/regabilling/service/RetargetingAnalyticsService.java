@@ -0,0 +1,218 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.entity.RetargetingMetricsRollup;
+import com.regabilling.entity.RetargetingRollupWatermark;
+import com.regabilling.repository.RetargetingMetricsRollupRepository;
+import com.regabilling.repository.RetargetingRollupWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingAnalyticsService {
+    
+    private static final String WATERMARK_NAME = "retargeting_metrics";
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    // Ordered by (created_at, id) rather than id alone: pooled id blocks are
+    // handed out per node, so a lower id can commit after a higher one.
+    private static final String NEW_EVENTS_SQL =
+        "SELECT m.id, m.event_type, m.event_timestamp, m.cost_incurred, m.created_at, c.campaign_week, c.campaign_type " +
+        "FROM retargeting_metrics m LEFT JOIN retargeting_campaigns c ON c.id = m.campaign_id " +
+        "WHERE (m.created_at > ? OR (m.created_at = ? AND m.id > ?)) AND m.created_at <= ? " +
+        "ORDER BY m.created_at, m.id LIMIT ?";
+    
+    private final RetargetingMetricsRollupRepository rollupRepository;
+    private final RetargetingRollupWatermarkRepository watermarkRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${app.retargeting.analytics.chunk-size:5000}")
+    private int chunkSize;
+    
+    @Value("${app.retargeting.analytics.max-chunks-per-run:20}")
+    private int maxChunksPerRun;
+    
+    @Value("${app.retargeting.analytics.settle-seconds:60}")
+    private long settleSeconds;
+    
+    @Scheduled(fixedDelayString = "${app.retargeting.analytics.rollup-interval-ms:60000}")
+    public void rollUp() {
+        try {
+            int total = 0;
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                Integer processed = transactionTemplate.execute(status -> rollUpChunk());
+                if (processed == null || processed == 0) {
+                    break;
+                }
+                total += processed;
+                if (processed < chunkSize) {
+                    break;
+                }
+            }
+            
+            if (total > 0) {
+                log.info("📈 Rolled up {} retargeting metric events", total);
+            }
+        } catch (Exception e) {
+            log.error("❌ Error rolling up retargeting metrics: {}", e.getMessage(), e);
+        }
+    }
+    
+    @Transactional(readOnly = true)
+    public List<RetargetingMetricsRollup> getRollups(RetargetingMetricsRollup.Granularity granularity,
+                                                     LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.findRange(granularity, from, to);
+    }
+    
+    @Transactional(readOnly = true)
+    public Optional<LocalDateTime> getWatermark() {
+        return watermarkRepository.findById(WATERMARK_NAME).map(RetargetingRollupWatermark::getLastCreatedAt);
+    }
+    
+    // Runs under a PESSIMISTIC_WRITE lock on the watermark row, so only one node
+    // folds a given range of events and the rollups and watermark move together.
+    private int rollUpChunk() {
+        RetargetingRollupWatermark watermark = watermarkRepository.findForUpdate(WATERMARK_NAME)
+            .orElseGet(() -> watermarkRepository.saveAndFlush(RetargetingRollupWatermark.builder()
+                .name(WATERMARK_NAME)
+                .lastMetricId(0L)
+                .lastCreatedAt(EPOCH)
+                .build()));
+        
+        Timestamp lastCreatedAt = Timestamp.valueOf(watermark.getLastCreatedAt());
+        Timestamp settledBefore = Timestamp.valueOf(LocalDateTime.now().minusSeconds(settleSeconds));
+        
+        List<EventRow> rows = jdbcTemplate.query(NEW_EVENTS_SQL, (rs, rowNum) -> new EventRow(
+            rs.getLong(1),
+            RetargetingMetrics.EventType.valueOf(rs.getString(2)),
+            rs.getTimestamp(3).toLocalDateTime(),
+            rs.getDouble(4),
+            rs.getTimestamp(5).toLocalDateTime(),
+            (Integer) rs.getObject(6),
+            rs.getString(7)
+        ), lastCreatedAt, lastCreatedAt, watermark.getLastMetricId(), settledBefore, chunkSize);
+        
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        
+        Map<RollupKey, Totals> hourly = new HashMap<>();
+        Map<RollupKey, Totals> daily = new HashMap<>();
+        for (EventRow row : rows) {
+            int week = row.campaignWeek() != null ? row.campaignWeek() : 0;
+            String channel = channelOf(row);
+            
+            hourly.computeIfAbsent(new RollupKey(row.eventTimestamp().truncatedTo(ChronoUnit.HOURS), row.eventType(), week, channel),
+                key -> new Totals()).add(row.costIncurred());
+            daily.computeIfAbsent(new RollupKey(row.eventTimestamp().truncatedTo(ChronoUnit.DAYS), row.eventType(), week, channel),
+                key -> new Totals()).add(row.costIncurred());
+        }
+        
+        merge(RetargetingMetricsRollup.Granularity.HOUR, hourly);
+        merge(RetargetingMetricsRollup.Granularity.DAY, daily);
+        
+        EventRow last = rows.get(rows.size() - 1);
+        watermark.setLastMetricId(last.id());
+        watermark.setLastCreatedAt(last.createdAt());
+        watermarkRepository.save(watermark);
+        
+        return rows.size();
+    }
+    
+    private void merge(RetargetingMetricsRollup.Granularity granularity, Map<RollupKey, Totals> totals) {
+        Set<LocalDateTime> buckets = totals.keySet().stream().map(RollupKey::bucketStart).collect(Collectors.toSet());
+        
+        Map<RollupKey, RetargetingMetricsRollup> existing = new HashMap<>();
+        for (RetargetingMetricsRollup rollup : rollupRepository.findByGranularityAndBucketStartIn(granularity, buckets)) {
+            existing.put(new RollupKey(rollup.getBucketStart(), rollup.getEventType(), rollup.getCampaignWeek(), rollup.getChannel()), rollup);
+        }
+        
+        List<RetargetingMetricsRollup> created = new ArrayList<>();
+        for (Map.Entry<RollupKey, Totals> entry : totals.entrySet()) {
+            RollupKey key = entry.getKey();
+            Totals delta = entry.getValue();
+            
+            RetargetingMetricsRollup rollup = existing.get(key);
+            if (rollup == null) {
+                created.add(RetargetingMetricsRollup.builder()
+                    .granularity(granularity)
+                    .bucketStart(key.bucketStart())
+                    .eventType(key.eventType())
+                    .campaignWeek(key.campaignWeek())
+                    .channel(key.channel())
+                    .eventCount(delta.count)
+                    .totalCost(delta.cost)
+                    .build());
+            } else {
+                rollup.setEventCount(rollup.getEventCount() + delta.count);
+                rollup.setTotalCost(rollup.getTotalCost() + delta.cost);
+            }
+        }
+        
+        rollupRepository.saveAll(created);
+    }
+    
+    private static String channelOf(EventRow row) {
+        if (row.campaignType() != null) {
+            return row.campaignType();
+        }
+        String eventType = row.eventType().name();
+        if (eventType.startsWith("EMAIL_")) {
+            return "EMAIL";
+        }
+        if (eventType.startsWith("SMS_")) {
+            return "SMS";
+        }
+        return "UNKNOWN";
+    }
+    
+    private record EventRow(
+        long id,
+        RetargetingMetrics.EventType eventType,
+        LocalDateTime eventTimestamp,
+        double costIncurred,
+        LocalDateTime createdAt,
+        Integer campaignWeek,
+        String campaignType
+    ) {
+    }
+    
+    private record RollupKey(
+        LocalDateTime bucketStart,
+        RetargetingMetrics.EventType eventType,
+        int campaignWeek,
+        String channel
+    ) {
+    }
+    
+    private static final class Totals {
+        
+        private long count;
+        private double cost;
+        
+        private void add(double eventCost) {
+            count++;
+            cost += eventCost;
+        }
+    }
+}
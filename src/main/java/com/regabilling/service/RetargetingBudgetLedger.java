@@ -0,0 +1,176 @@
+package com.regabilling.service;
+
+import com.regabilling.repository.RetargetingCampaignRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingBudgetLedger {
+    
+    private final RetargetingCampaignRepository campaignRepository;
+    
+    @Value("${app.retargeting.max-weekly-spend:5000.0}")
+    private Double maxWeeklySpend;
+    
+    @Value("${app.retargeting.max-monthly-spend:20000.0}")
+    private Double maxMonthlySpend;
+    
+    // All amounts are tracked in cents so reservations can be applied with plain CAS loops.
+    private final AtomicLong weeklySpentCents = new AtomicLong();
+    private final AtomicLong monthlySpentCents = new AtomicLong();
+    private final AtomicLong pendingCents = new AtomicLong();
+    
+    private volatile LocalDateTime weekStart;
+    private volatile LocalDateTime monthStart;
+    
+    // Reservations, commits and releases share the read lock and stay CAS-only
+    // among themselves; a reload takes the write lock so none of them can land
+    // between the DB SUM and resetting the counters. A campaign whose row is
+    // already committed but whose commit() has not run yet is counted in both
+    // the SUM and pending until the next reload: an over-count, never an overshoot.
+    private final ReentrantReadWriteLock reloadLock = new ReentrantReadWriteLock();
+    
+    public void load() {
+        reloadLock.writeLock().lock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime currentWeekStart = now.with(DayOfWeek.MONDAY).truncatedTo(ChronoUnit.DAYS);
+            LocalDateTime currentMonthStart = now.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            
+            long weekly = toCents(campaignRepository.getTotalCostSince(currentWeekStart));
+            long monthly = toCents(campaignRepository.getTotalCostSince(currentMonthStart));
+            long pending = pendingCents.get();
+            
+            weeklySpentCents.set(weekly + pending);
+            monthlySpentCents.set(monthly + pending);
+            weekStart = currentWeekStart;
+            monthStart = currentMonthStart;
+            
+            log.debug("💰 Budget ledger loaded: weekly={} monthly={} pending={} (cents)", weekly, monthly, pending);
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.retargeting.budget.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        try {
+            load();
+        } catch (Exception e) {
+            log.error("❌ Error reconciling budget ledger: {}", e.getMessage(), e);
+        }
+    }
+    
+    public boolean hasHeadroom() {
+        ensureCurrentPeriod();
+        return weeklySpentCents.get() < toCents(maxWeeklySpend)
+            && monthlySpentCents.get() < toCents(maxMonthlySpend);
+    }
+    
+    // The period check may reload, so it runs before the read lock is taken
+    public boolean tryReserve(double amount) {
+        ensureCurrentPeriod();
+        long cents = toCents(amount);
+        
+        reloadLock.readLock().lock();
+        try {
+            if (!tryAdd(weeklySpentCents, cents, toCents(maxWeeklySpend))) {
+                return false;
+            }
+            if (!tryAdd(monthlySpentCents, cents, toCents(maxMonthlySpend))) {
+                weeklySpentCents.addAndGet(-cents);
+                return false;
+            }
+            
+            pendingCents.addAndGet(cents);
+            return true;
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+    
+    public void settleAfterTransaction(double amount) {
+        if (amount <= 0) {
+            return;
+        }
+        
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commit(amount);
+            return;
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    commit(amount);
+                } else {
+                    release(amount);
+                }
+            }
+        });
+    }
+    
+    public void commit(double amount) {
+        reloadLock.readLock().lock();
+        try {
+            pendingCents.addAndGet(-toCents(amount));
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+    
+    public void release(double amount) {
+        long cents = toCents(amount);
+        reloadLock.readLock().lock();
+        try {
+            weeklySpentCents.addAndGet(-cents);
+            monthlySpentCents.addAndGet(-cents);
+            pendingCents.addAndGet(-cents);
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+    
+    private void ensureCurrentPeriod() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime currentWeekStart = weekStart;
+        LocalDateTime currentMonthStart = monthStart;
+        
+        if (currentWeekStart == null || currentMonthStart == null
+            || !now.isBefore(currentWeekStart.plusWeeks(1))
+            || !now.isBefore(currentMonthStart.plusMonths(1))) {
+            load();
+        }
+    }
+    
+    private static boolean tryAdd(AtomicLong counter, long cents, long limit) {
+        while (true) {
+            long current = counter.get();
+            long updated = current + cents;
+            if (updated > limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+    
+    private static long toCents(Double amount) {
+        return amount == null ? 0L : Math.round(amount * 100);
+    }
+}
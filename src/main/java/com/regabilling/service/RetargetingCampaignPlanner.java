@@ -0,0 +1,210 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.PreCustomer;
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.entity.RetargetingTemplate;
+import com.regabilling.service.RetargetingTemplateCache.CachedTemplate;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingCampaignPlanner {
+    
+    private static final String ADVANCE_WEEK_SQL =
+        "UPDATE pre_customers SET retargeting_week = ?, last_retargeting_sent = ?, updated_at = ? WHERE id = ?";
+    
+    private static final String UPDATE_STATUS_SQL =
+        "UPDATE pre_customers SET status = ?, updated_at = ? WHERE id = ?";
+    
+    private final RetargetingCampaignRepository campaignRepository;
+    private final RetargetingTemplateCache templateCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final RetargetingBudgetLedger budgetLedger;
+    private final RetargetingMetricsSink metricsSink;
+    
+    @Value("${app.retargeting.email-cost:0.50}")
+    private Double emailCost;
+    
+    @Value("${app.retargeting.sms-cost:3.00}")
+    private Double smsCost;
+    
+    public PlanResult plan(List<PreCustomer> preCustomers) {
+        if (preCustomers.isEmpty()) {
+            return new PlanResult(0, false);
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> existingWeeks = loadExistingCampaignWeeks(preCustomers);
+        Set<String> missingTemplates = new HashSet<>();
+        
+        List<RetargetingCampaign> campaigns = new ArrayList<>();
+        List<Object[]> weekAdvances = new ArrayList<>();
+        List<Object[]> abandoned = new ArrayList<>();
+        
+        double plannedCost = 0.0;
+        boolean budgetExhausted = false;
+        
+        for (PreCustomer preCustomer : preCustomers) {
+            int nextWeek = preCustomer.getRetargetingWeek() + 1;
+            
+            if (nextWeek > 4) {
+                abandoned.add(new Object[] {
+                    PreCustomer.PreCustomerStatus.ABANDONED.name(), Timestamp.valueOf(now), preCustomer.getId()
+                });
+                continue;
+            }
+            
+            if (existingWeeks.contains(weekKey(preCustomer.getId(), nextWeek))) {
+                continue;
+            }
+            
+            CachedTemplate emailTemplate = findTemplate(RetargetingTemplate.TemplateType.EMAIL, nextWeek, missingTemplates);
+            CachedTemplate smsTemplate = (nextWeek == 2 || nextWeek == 4)
+                ? findTemplate(RetargetingTemplate.TemplateType.SMS, nextWeek, missingTemplates)
+                : null;
+            
+            if (emailTemplate == null && smsTemplate == null) {
+                continue;
+            }
+            
+            double userCost = (emailTemplate != null ? emailCost : 0.0) + (smsTemplate != null ? smsCost : 0.0);
+            if (!budgetLedger.tryReserve(userCost)) {
+                budgetExhausted = true;
+                break;
+            }
+            plannedCost += userCost;
+            
+            LocalDateTime scheduledTime = calculateOptimalScheduleTime(nextWeek);
+            
+            if (emailTemplate != null) {
+                campaigns.add(RetargetingCampaign.builder()
+                    .preCustomer(preCustomer)
+                    .campaignType(RetargetingCampaign.CampaignType.EMAIL)
+                    .status(RetargetingCampaign.CampaignStatus.SCHEDULED)
+                    .scheduledAt(scheduledTime)
+                    .campaignWeek(nextWeek)
+                    .templateId(emailTemplate.id())
+                    .costIncurred(emailCost)
+                    .createdAt(now)
+                    .build());
+            }
+            
+            if (smsTemplate != null) {
+                campaigns.add(RetargetingCampaign.builder()
+                    .preCustomer(preCustomer)
+                    .campaignType(RetargetingCampaign.CampaignType.SMS)
+                    .status(RetargetingCampaign.CampaignStatus.SCHEDULED)
+                    .scheduledAt(scheduledTime.plusMinutes(5))
+                    .campaignWeek(nextWeek)
+                    .templateId(smsTemplate.id())
+                    .costIncurred(smsCost)
+                    .createdAt(now)
+                    .build());
+            }
+            
+            weekAdvances.add(new Object[] {
+                nextWeek, Timestamp.valueOf(now), Timestamp.valueOf(now), preCustomer.getId()
+            });
+            log.debug("✅ Planned campaigns for user {} (week {})", preCustomer.getEmail(), nextWeek);
+        }
+        
+        budgetLedger.settleAfterTransaction(plannedCost);
+        
+        insertCampaigns(campaigns);
+        recordScheduledMetrics(campaigns, now);
+        
+        if (!weekAdvances.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADVANCE_WEEK_SQL, weekAdvances);
+        }
+        if (!abandoned.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL, abandoned);
+        }
+        
+        return new PlanResult(weekAdvances.size(), budgetExhausted);
+    }
+    
+    private CachedTemplate findTemplate(RetargetingTemplate.TemplateType type, int week, Set<String> missingTemplates) {
+        CachedTemplate template = templateCache.find(type, week).orElse(null);
+        if (template == null && missingTemplates.add(type.name() + ":" + week)) {
+            log.warn("⚠️ No {} template found for week {}", type, week);
+        }
+        return template;
+    }
+    
+    private Set<String> loadExistingCampaignWeeks(List<PreCustomer> preCustomers) {
+        List<Long> ids = new ArrayList<>(preCustomers.size());
+        for (PreCustomer preCustomer : preCustomers) {
+            ids.add(preCustomer.getId());
+        }
+        
+        Set<String> existingWeeks = new HashSet<>();
+        for (Object[] row : campaignRepository.findCampaignWeeksByPreCustomerIds(ids)) {
+            existingWeeks.add(weekKey((Long) row[0], (Integer) row[1]));
+        }
+        return existingWeeks;
+    }
+    
+    // Ids come from the pooled table allocator, so these persists are sent as
+    // JDBC batches of hibernate.jdbc.batch_size on flush.
+    private void insertCampaigns(List<RetargetingCampaign> campaigns) {
+        if (campaigns.isEmpty()) {
+            return;
+        }
+        
+        for (RetargetingCampaign campaign : campaigns) {
+            entityManager.persist(campaign);
+        }
+        entityManager.flush();
+    }
+    
+    private void recordScheduledMetrics(List<RetargetingCampaign> campaigns, LocalDateTime now) {
+        List<RetargetingMetricsSink.MetricEvent> events = new ArrayList<>(campaigns.size());
+        for (RetargetingCampaign campaign : campaigns) {
+            RetargetingMetrics.EventType eventType = campaign.getCampaignType() == RetargetingCampaign.CampaignType.EMAIL
+                ? RetargetingMetrics.EventType.EMAIL_SCHEDULED
+                : RetargetingMetrics.EventType.SMS_SCHEDULED;
+            events.add(new RetargetingMetricsSink.MetricEvent(
+                campaign.getId(), campaign.getPreCustomer().getId(), eventType, now, null, campaign.getCostIncurred()
+            ));
+        }
+        metricsSink.recordAfterCommit(events);
+    }
+    
+    private LocalDateTime calculateOptimalScheduleTime(int week) {
+        LocalDateTime now = LocalDateTime.now();
+        DayOfWeek targetDay = (week == 1) ? DayOfWeek.MONDAY : DayOfWeek.TUESDAY;
+        int targetHour = (week <= 2) ? 11 : 10;
+        
+        LocalDateTime nextTarget = now.with(targetDay).withHour(targetHour).withMinute(0).withSecond(0);
+        
+        if (nextTarget.isBefore(now) || nextTarget.isEqual(now)) {
+            nextTarget = nextTarget.plusWeeks(1);
+        }
+        
+        return nextTarget;
+    }
+    
+    private static String weekKey(Long preCustomerId, Integer week) {
+        return preCustomerId + ":" + week;
+    }
+    
+    public record PlanResult(int usersScheduled, boolean budgetExhausted) {
+    }
+}
@@ -0,0 +1,222 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.regabilling.entity.RetargetingMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingMetricsArchive {
+    
+    private static final String FILE_PREFIX = "retargeting_metrics-";
+    private static final String FILE_SUFFIX = ".ndjson.gz";
+    
+    // Dictionary ids are resolved on export so archives stay readable on their own.
+    private static final String EXPORT_SQL =
+        "SELECT m.id, m.campaign_id, m.pre_customer_id, m.event_type, m.event_timestamp, m.metadata, m.cost_incurred, m.created_at, " +
+        "ua.entry_value, m.ip_address, url.entry_value, m.error_code " +
+        "FROM retargeting_metrics m " +
+        "LEFT JOIN metric_dictionary ua ON ua.id = m.user_agent_id " +
+        "LEFT JOIN metric_dictionary url ON url.id = m.url_id " +
+        "WHERE m.event_timestamp >= ? AND m.event_timestamp < ? AND m.id > ? ORDER BY m.id LIMIT ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${app.retargeting.retention.archive-dir:metrics-archive}")
+    private String archiveDir;
+    
+    @Value("${app.retargeting.retention.chunk-size:5000}")
+    private int chunkSize;
+    
+    // Each part file is named after the highest id it holds, and an export
+    // only picks up rows above the highest id already archived for the month.
+    // A month exported again after a failed drop or delete therefore adds
+    // nothing, instead of writing a second copy of the same rows.
+    public ExportResult export(YearMonth month) throws IOException {
+        Path dir = Paths.get(archiveDir);
+        Files.createDirectories(dir);
+        
+        long archivedThroughId = archivedThroughId(month);
+        Path temp = dir.resolve(FILE_PREFIX + month + FILE_SUFFIX + ".tmp");
+        
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        
+        long rows = 0;
+        long lastId = archivedThroughId;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+            while (true) {
+                List<ArchivedMetric> chunk = jdbcTemplate.query(EXPORT_SQL, (rs, rowNum) -> new ArchivedMetric(
+                    rs.getLong(1),
+                    (Long) rs.getObject(2),
+                    (Long) rs.getObject(3),
+                    RetargetingMetrics.EventType.valueOf(rs.getString(4)),
+                    rs.getTimestamp(5).toLocalDateTime(),
+                    rs.getString(6),
+                    (Double) rs.getObject(7),
+                    rs.getTimestamp(8) != null ? rs.getTimestamp(8).toLocalDateTime() : null,
+                    rs.getString(9),
+                    rs.getString(10),
+                    rs.getString(11),
+                    rs.getString(12)
+                ), from, to, lastId, chunkSize);
+                
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                for (ArchivedMetric metric : chunk) {
+                    writer.write(objectMapper.writeValueAsString(metric));
+                    writer.write('\n');
+                }
+                
+                lastId = chunk.get(chunk.size() - 1).id();
+                rows += chunk.size();
+                
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        
+        if (rows == 0) {
+            Files.delete(temp);
+            return new ExportResult(month, null, 0, archivedThroughId);
+        }
+        
+        Path target = dir.resolve(FILE_PREFIX + month + "-" + String.format("%019d", lastId) + FILE_SUFFIX);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        log.info("🗄️ Archived {} retargeting metric events for {} to {}", rows, month, target);
+        return new ExportResult(month, target, rows, lastId);
+    }
+    
+    private long archivedThroughId(YearMonth month) throws IOException {
+        long archivedThroughId = 0;
+        for (Path part : listArchives().getOrDefault(month, List.of())) {
+            archivedThroughId = Math.max(archivedThroughId, lastIdOf(part));
+        }
+        return archivedThroughId;
+    }
+    
+    public Map<YearMonth, List<Path>> listArchives() throws IOException {
+        Map<YearMonth, List<Path>> archives = new TreeMap<>();
+        Path dir = Paths.get(archiveDir);
+        if (!Files.isDirectory(dir)) {
+            return archives;
+        }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                YearMonth month = monthOf(file);
+                if (month != null) {
+                    archives.computeIfAbsent(month, key -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+        archives.values().forEach(parts -> parts.sort(null));
+        return archives;
+    }
+    
+    // Streams the archived events of a month as NDJSON, optionally filtered by
+    // campaign and event type; nothing is held in memory beyond a single line.
+    public long read(YearMonth month, Long campaignId, RetargetingMetrics.EventType eventType,
+                     int limit, OutputStream out) throws IOException {
+        List<Path> parts = listArchives().getOrDefault(month, List.of());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        
+        long written = 0;
+        for (Path part : parts) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(part)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    if (campaignId != null || eventType != null) {
+                        ArchivedMetric metric = objectMapper.readValue(line, ArchivedMetric.class);
+                        if (campaignId != null && !campaignId.equals(metric.campaignId())) {
+                            continue;
+                        }
+                        if (eventType != null && eventType != metric.eventType()) {
+                            continue;
+                        }
+                    }
+                    writer.write(line);
+                    writer.write('\n');
+                    if (++written >= limit) {
+                        writer.flush();
+                        return written;
+                    }
+                }
+            }
+        }
+        writer.flush();
+        return written;
+    }
+    
+    private static long lastIdOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length() + 8, name.length() - FILE_SUFFIX.length()));
+    }
+    
+    private static YearMonth monthOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return YearMonth.parse(name.substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 7));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    public record ArchivedMetric(
+        long id,
+        Long campaignId,
+        Long preCustomerId,
+        RetargetingMetrics.EventType eventType,
+        LocalDateTime eventTimestamp,
+        String metadata,
+        Double costIncurred,
+        LocalDateTime createdAt,
+        String userAgent,
+        String ipAddress,
+        String url,
+        String errorCode
+    ) {
+    }
+    
+    public record ExportResult(YearMonth month, Path file, long rows, long archivedThroughId) {
+    }
+}
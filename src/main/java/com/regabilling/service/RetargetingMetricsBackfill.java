@@ -0,0 +1,153 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.MetricDictionaryEntry;
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.entity.RetargetingRollupWatermark;
+import com.regabilling.repository.RetargetingRollupWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Moves the user agent, IP, URL and error details that older rows kept as
+// String.format'd text in metadata into the typed columns, one chunk per transaction.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingMetricsBackfill {
+    
+    private static final String WATERMARK_NAME = "retargeting_metrics_metadata";
+    private static final String OPEN_PREFIX = "user_agent=";
+    private static final String OPEN_IP_SEPARATOR = ",ip=";
+    private static final String CLICK_PREFIX = "clicked_url=";
+    private static final String UNCLASSIFIED = "UNCLASSIFIED";
+    
+    private static final String LEGACY_ROWS_SQL =
+        "SELECT id, event_type, metadata FROM retargeting_metrics " +
+        "WHERE id > ? AND metadata IS NOT NULL AND event_type IN ('EMAIL_OPENED', 'EMAIL_CLICKED', 'EMAIL_FAILED', 'SMS_FAILED') " +
+        "ORDER BY id LIMIT ?";
+    
+    private static final String UPDATE_SQL =
+        "UPDATE retargeting_metrics SET user_agent_id = ?, ip_address = ?, url_id = ?, error_code = ?, metadata = ? WHERE id = ?";
+    
+    private final RetargetingRollupWatermarkRepository watermarkRepository;
+    private final MetricDictionary metricDictionary;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${app.retargeting.metrics.backfill.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${app.retargeting.metrics.backfill.max-chunks-per-run:20}")
+    private int maxChunksPerRun;
+    
+    private volatile boolean completed;
+    
+    @Scheduled(fixedDelayString = "${app.retargeting.metrics.backfill.interval-ms:30000}")
+    public void backfill() {
+        if (completed) {
+            return;
+        }
+        
+        try {
+            int total = 0;
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                Integer processed = transactionTemplate.execute(status -> backfillChunk());
+                if (processed == null || processed < chunkSize) {
+                    total += processed != null ? processed : 0;
+                    completed = true;
+                    log.info("📊 Metrics metadata backfill complete, {} rows converted in the last run", total);
+                    return;
+                }
+                total += processed;
+            }
+            log.info("📊 Backfilled typed metadata for {} retargeting metric rows", total);
+        } catch (Exception e) {
+            log.error("❌ Error backfilling retargeting metrics metadata: {}", e.getMessage(), e);
+        }
+    }
+    
+    private int backfillChunk() {
+        RetargetingRollupWatermark watermark = watermarkRepository.findForUpdate(WATERMARK_NAME)
+            .orElseGet(() -> watermarkRepository.saveAndFlush(RetargetingRollupWatermark.builder()
+                .name(WATERMARK_NAME)
+                .lastMetricId(0L)
+                .lastCreatedAt(LocalDateTime.now())
+                .build()));
+        
+        List<Object[]> rows = jdbcTemplate.query(LEGACY_ROWS_SQL, (rs, rowNum) -> new Object[] {
+            rs.getLong(1), rs.getString(2), rs.getString(3)
+        }, watermark.getLastMetricId(), chunkSize);
+        
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            updates.add(convert((Long) row[0], RetargetingMetrics.EventType.valueOf((String) row[1]), (String) row[2]));
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+        
+        watermark.setLastMetricId((Long) rows.get(rows.size() - 1)[0]);
+        watermark.setLastCreatedAt(LocalDateTime.now());
+        watermarkRepository.save(watermark);
+        
+        return rows.size();
+    }
+    
+    // Metadata that does not match the legacy format is left in place.
+    private Object[] convert(Long id, RetargetingMetrics.EventType eventType, String metadata) {
+        Long userAgentId = null;
+        String ipAddress = null;
+        Long urlId = null;
+        String errorCode = null;
+        String remaining = metadata;
+        
+        switch (eventType) {
+            case EMAIL_OPENED -> {
+                int separator = metadata.lastIndexOf(OPEN_IP_SEPARATOR);
+                if (metadata.startsWith(OPEN_PREFIX) && separator >= OPEN_PREFIX.length()) {
+                    userAgentId = metricDictionary.intern(MetricDictionaryEntry.Kind.USER_AGENT,
+                        legacyValue(metadata.substring(OPEN_PREFIX.length(), separator)));
+                    ipAddress = legacyIp(metadata.substring(separator + OPEN_IP_SEPARATOR.length()));
+                    remaining = null;
+                }
+            }
+            case EMAIL_CLICKED -> {
+                if (metadata.startsWith(CLICK_PREFIX)) {
+                    urlId = metricDictionary.intern(MetricDictionaryEntry.Kind.URL,
+                        legacyValue(metadata.substring(CLICK_PREFIX.length())));
+                    remaining = null;
+                }
+            }
+            default -> {
+                String code = DeliveryErrorCodes.of(metadata);
+                errorCode = code != null ? code : UNCLASSIFIED;
+                remaining = null;
+            }
+        }
+        
+        return new Object[] { userAgentId, ipAddress, urlId, errorCode, remaining, id };
+    }
+    
+    private static String legacyIp(String forwardedFor) {
+        String ip = legacyValue(forwardedFor.split(",", 2)[0].trim());
+        return ip != null && ip.length() > 45 ? ip.substring(0, 45) : ip;
+    }
+    
+    // String.format wrote missing values as "null", and the tracker used "unknown" for missing IPs.
+    private static String legacyValue(String value) {
+        if (value.isBlank() || "null".equals(value) || "unknown".equals(value)) {
+            return null;
+        }
+        return value;
+    }
+}
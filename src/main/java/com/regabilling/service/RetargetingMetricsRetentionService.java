@@ -0,0 +1,284 @@
+package com.regabilling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingMetricsRetentionService {
+    
+    private static final String TABLE = "retargeting_metrics";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    
+    // MySQL TO_DAYS('1970-01-01'); partition bounds are stored as day numbers.
+    private static final long TO_DAYS_EPOCH = 719528L;
+    
+    private static final String PARTITIONS_SQL =
+        "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+        "ORDER BY PARTITION_ORDINAL_POSITION";
+    
+    private static final String ARCHIVED_IDS_SQL =
+        "SELECT id FROM retargeting_metrics WHERE event_timestamp >= ? AND event_timestamp < ? AND id <= ? ORDER BY id LIMIT ?";
+    
+    private static final String UNROLLED_SQL =
+        "SELECT COUNT(*) FROM retargeting_metrics WHERE event_timestamp >= ? AND event_timestamp < ? AND created_at >= ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final RetargetingAnalyticsService analyticsService;
+    private final RetargetingMetricsArchive metricsArchive;
+    
+    @Value("${app.retargeting.retention.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.retargeting.retention.retain-months:6}")
+    private int retainMonths;
+    
+    @Value("${app.retargeting.retention.partitions-ahead:3}")
+    private int partitionsAhead;
+    
+    @Value("${app.retargeting.retention.chunk-size:5000}")
+    private int chunkSize;
+    
+    @Value("${app.retargeting.retention.auto-partition:false}")
+    private boolean autoPartition;
+    
+    private volatile Boolean mysql;
+    
+    @Scheduled(cron = "${app.retargeting.retention.cron:0 15 3 * * *}", zone = "Asia/Kolkata")
+    public void enforceRetention() {
+        if (!enabled) {
+            return;
+        }
+        
+        try {
+            List<Partition> partitions = List.of();
+            if (isMySql()) {
+                partitions = preparePartitions();
+            }
+            
+            // Rows are only archived once the rollup job has folded them in,
+            // otherwise dropping them would silently lose analytics.
+            Optional<LocalDateTime> watermark = analyticsService.getWatermark();
+            if (watermark.isEmpty()) {
+                log.info("🗄️ No rollup watermark yet, skipping retargeting metrics archival");
+                return;
+            }
+            
+            LocalDateTime cutoff = cutoff(watermark.get());
+            if (partitions.isEmpty()) {
+                archiveByDelete(cutoff, watermark.get());
+            } else {
+                archivePartitions(partitions, cutoff, watermark.get());
+            }
+        } catch (Exception e) {
+            log.error("❌ Error enforcing retargeting metrics retention: {}", e.getMessage(), e);
+        }
+    }
+    
+    private LocalDateTime cutoff(LocalDateTime watermark) {
+        LocalDateTime retentionStart = YearMonth.now().minusMonths(retainMonths).atDay(1).atStartOfDay();
+        LocalDateTime watermarkMonth = YearMonth.from(watermark).atDay(1).atStartOfDay();
+        return retentionStart.isBefore(watermarkMonth) ? retentionStart : watermarkMonth;
+    }
+    
+    // Dropping a partition is a metadata operation, so expiring a month costs
+    // the same regardless of how many events it holds.
+    private void archivePartitions(List<Partition> partitions, LocalDateTime cutoff, LocalDateTime watermark) throws IOException {
+        for (Partition partition : partitions) {
+            if (partition.upperBound() == null || partition.upperBound().isAfter(cutoff)) {
+                break;
+            }
+            
+            LocalDateTime lowerBound = partition.lowerBound() != null
+                ? partition.lowerBound()
+                : oldestEventBefore(partition.upperBound());
+            
+            if (lowerBound != null) {
+                if (hasUnrolledEvents(lowerBound, partition.upperBound(), watermark)) {
+                    log.warn("⚠️ Partition {} still has events past the rollup watermark, stopping archival", partition.name());
+                    return;
+                }
+                for (YearMonth month = YearMonth.from(lowerBound);
+                     month.atDay(1).atStartOfDay().isBefore(partition.upperBound());
+                     month = month.plusMonths(1)) {
+                    metricsArchive.export(month);
+                }
+            }
+            
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition.name());
+            log.info("🗄️ Dropped retargeting metrics partition {}", partition.name());
+        }
+    }
+    
+    // Without partitions each expired month is deleted in id-range chunks,
+    // keeping every DELETE short and index-bounded. Everything up to the
+    // archived id goes, including rows exported by an earlier run whose
+    // delete failed.
+    private void archiveByDelete(LocalDateTime cutoff, LocalDateTime watermark) throws IOException {
+        LocalDateTime oldest = oldestEventBefore(cutoff);
+        if (oldest == null) {
+            return;
+        }
+        
+        for (YearMonth month = YearMonth.from(oldest); month.atDay(1).atStartOfDay().isBefore(cutoff); month = month.plusMonths(1)) {
+            LocalDateTime from = month.atDay(1).atStartOfDay();
+            LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+            
+            if (hasUnrolledEvents(from, to, watermark)) {
+                log.warn("⚠️ Month {} still has events past the rollup watermark, stopping archival", month);
+                return;
+            }
+            
+            RetargetingMetricsArchive.ExportResult export = metricsArchive.export(month);
+            
+            int deleted = 0;
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList(ARCHIVED_IDS_SQL, Long.class,
+                    Timestamp.valueOf(from), Timestamp.valueOf(to), export.archivedThroughId(), chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                deleted += jdbcTemplate.update(
+                    "DELETE FROM " + TABLE + " WHERE id BETWEEN ? AND ? AND event_timestamp >= ? AND event_timestamp < ?",
+                    ids.get(0), ids.get(ids.size() - 1), Timestamp.valueOf(from), Timestamp.valueOf(to));
+            }
+            
+            if (deleted > 0) {
+                log.info("🗄️ Deleted {} archived retargeting metric events for {}", deleted, month);
+            }
+        }
+    }
+    
+    private List<Partition> preparePartitions() {
+        List<Partition> partitions = listPartitions();
+        
+        if (partitions.isEmpty()) {
+            if (!autoPartition) {
+                log.info("🗄️ {} is not partitioned and auto-partition is off, archiving by delete", TABLE);
+                return partitions;
+            }
+            partitionTable();
+            partitions = listPartitions();
+        }
+        
+        ensureFuturePartitions(partitions);
+        return listPartitions();
+    }
+    
+    // One-off rebuild of an unpartitioned table, matching the MySQL V9
+    // migration: one partition per month from the oldest event on, so every
+    // expired month can later be dropped on its own. MySQL requires the
+    // partition column in every unique key, so the primary key becomes
+    // (id, event_timestamp).
+    private void partitionTable() {
+        log.warn("⚠️ Partitioning {} by month, this rebuilds the table once", TABLE);
+        
+        LocalDateTime oldest = oldestEventBefore(LocalDateTime.now().plusYears(100));
+        YearMonth first = oldest != null ? YearMonth.from(oldest) : YearMonth.now();
+        
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(YearMonth.now()); month = month.plusMonths(1)) {
+            definitions.add("PARTITION " + month.format(PARTITION_NAME) +
+                " VALUES LESS THAN (TO_DAYS('" + month.plusMonths(1).atDay(1) + "'))");
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE");
+        
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " MODIFY event_timestamp DATETIME(6) NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, event_timestamp)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " PARTITION BY RANGE (TO_DAYS(event_timestamp)) (" +
+            String.join(", ", definitions) + ")");
+    }
+    
+    // Keeps empty monthly partitions ahead of now so the catch-all partition
+    // never accumulates rows and splitting it stays cheap.
+    private void ensureFuturePartitions(List<Partition> partitions) {
+        LocalDateTime lastBound = null;
+        String catchAll = null;
+        for (Partition partition : partitions) {
+            if (partition.upperBound() == null) {
+                catchAll = partition.name();
+            } else {
+                lastBound = partition.upperBound();
+            }
+        }
+        
+        YearMonth target = YearMonth.now().plusMonths(partitionsAhead + 1L);
+        YearMonth next = lastBound != null ? YearMonth.from(lastBound) : YearMonth.now();
+        if (!next.isBefore(target)) {
+            return;
+        }
+        
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month = next; month.isBefore(target); month = month.plusMonths(1)) {
+            definitions.add("PARTITION " + month.format(PARTITION_NAME) +
+                " VALUES LESS THAN (TO_DAYS('" + month.plusMonths(1).atDay(1) + "'))");
+        }
+        
+        if (catchAll != null) {
+            definitions.add("PARTITION " + catchAll + " VALUES LESS THAN MAXVALUE");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + catchAll +
+                " INTO (" + String.join(", ", definitions) + ")");
+        } else {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PARTITION (" + String.join(", ", definitions) + ")");
+        }
+        log.info("🗄️ Added {} monthly partitions to {}", catchAll != null ? definitions.size() - 1 : definitions.size(), TABLE);
+    }
+    
+    private List<Partition> listPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        LocalDateTime lowerBound = null;
+        
+        for (String[] row : jdbcTemplate.query(PARTITIONS_SQL,
+                (rs, rowNum) -> new String[] { rs.getString(1), rs.getString(2) }, TABLE)) {
+            LocalDateTime upperBound = "MAXVALUE".equalsIgnoreCase(row[1])
+                ? null
+                : LocalDate.ofEpochDay(Long.parseLong(row[1].trim()) - TO_DAYS_EPOCH).atStartOfDay();
+            partitions.add(new Partition(row[0], lowerBound, upperBound));
+            lowerBound = upperBound;
+        }
+        return partitions;
+    }
+    
+    private LocalDateTime oldestEventBefore(LocalDateTime before) {
+        Timestamp oldest = jdbcTemplate.queryForObject(
+            "SELECT MIN(event_timestamp) FROM " + TABLE + " WHERE event_timestamp < ?",
+            Timestamp.class, Timestamp.valueOf(before));
+        return oldest != null ? oldest.toLocalDateTime() : null;
+    }
+    
+    private boolean hasUnrolledEvents(LocalDateTime from, LocalDateTime to, LocalDateTime watermark) {
+        Long count = jdbcTemplate.queryForObject(UNROLLED_SQL, Long.class,
+            Timestamp.valueOf(from), Timestamp.valueOf(to), Timestamp.valueOf(watermark));
+        return count != null && count > 0;
+    }
+    
+    private boolean isMySql() {
+        if (mysql == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+            mysql = product != null && product.toLowerCase().contains("mysql");
+        }
+        return mysql;
+    }
+    
+    private record Partition(String name, LocalDateTime lowerBound, LocalDateTime upperBound) {
+    }
+}
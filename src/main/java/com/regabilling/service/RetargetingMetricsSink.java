@@ -0,0 +1,392 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.regabilling.entity.MetricDictionaryEntry;
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingMetricsSink {
+    
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final MetricDictionary metricDictionary;
+    
+    @Value("${app.retargeting.metrics.buffer-capacity:65536}")
+    private int bufferCapacity;
+    
+    @Value("${app.retargeting.metrics.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${app.retargeting.metrics.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+    
+    @Value("${app.retargeting.metrics.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+    
+    @Value("${app.retargeting.metrics.spill-path:metrics-spill.ndjson}")
+    private String spillPath;
+    
+    private final Object spillLock = new Object();
+    
+    private MetricsRingBuffer<MetricEvent> buffer;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean spillPending;
+    private BufferedWriter spillWriter;
+    
+    private Counter dropped;
+    private Counter spilled;
+    
+    @PostConstruct
+    void start() {
+        buffer = new MetricsRingBuffer<>(bufferCapacity);
+        spillPending = Files.exists(Paths.get(spillPath));
+        
+        Gauge.builder("retargeting.metrics.buffer.depth", buffer, MetricsRingBuffer::size)
+            .register(meterRegistry);
+        dropped = Counter.builder("retargeting.metrics.dropped").register(meterRegistry);
+        spilled = Counter.builder("retargeting.metrics.spilled").register(meterRegistry);
+        
+        running = true;
+        writer = new Thread(this::runWriter, "metrics-writer");
+        writer.setDaemon(true);
+        writer.start();
+        
+        log.info("📊 Metrics sink started: capacity={}, batch={}, flush={}ms, overflow={}",
+            buffer.capacity(), batchSize, flushIntervalMs, overflowPolicy);
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        
+        if (writer.isAlive()) {
+            log.warn("⚠️ Metrics writer did not finish within 30s, {} events left in buffer", buffer.size());
+        }
+        closeSpillWriter();
+    }
+    
+    public void record(RetargetingMetrics.EventType eventType, RetargetingCampaign campaign, String metadata) {
+        record(new MetricEvent(
+            campaign.getId(),
+            campaign.getPreCustomer().getId(),
+            eventType,
+            LocalDateTime.now(),
+            metadata,
+            campaign.getCostIncurred()
+        ));
+    }
+    
+    public void recordFailure(RetargetingMetrics.EventType eventType, RetargetingCampaign campaign, String errorCode) {
+        record(new MetricEvent(
+            campaign.getId(),
+            campaign.getPreCustomer().getId(),
+            eventType,
+            LocalDateTime.now(),
+            null,
+            campaign.getCostIncurred(),
+            null,
+            null,
+            null,
+            errorCode
+        ));
+    }
+    
+    public void record(MetricEvent event) {
+        if (buffer.offer(event)) {
+            return;
+        }
+        
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                while (!buffer.offer(event)) {
+                    if (!running) {
+                        spill(List.of(event));
+                        return;
+                    }
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(IDLE_PARK_NANOS / 5);
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!buffer.offer(event)) {
+                    if (buffer.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+            }
+            case SPILL -> spill(List.of(event));
+        }
+    }
+    
+    // Events produced inside a transaction are only enqueued once it commits,
+    // so a rolled-back chunk never leaves orphaned metric rows behind.
+    public void recordAfterCommit(List<MetricEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    events.forEach(RetargetingMetricsSink.this::record);
+                }
+            });
+        } else {
+            events.forEach(this::record);
+        }
+    }
+    
+    private void runWriter() {
+        List<MetricEvent> batch = new ArrayList<>(batchSize);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        long lastFlush = System.nanoTime();
+        
+        while (running || buffer.size() > 0) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            
+            boolean full = batch.size() >= batchSize;
+            boolean due = System.nanoTime() - lastFlush >= flushIntervalNanos;
+            
+            if (!batch.isEmpty() && (full || due || !running)) {
+                flush(batch);
+                batch.clear();
+                lastFlush = System.nanoTime();
+            } else if (batch.isEmpty() && due) {
+                if (spillPending) {
+                    replaySpill();
+                }
+                lastFlush = System.nanoTime();
+            }
+            
+            if (!full && running) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+    
+    private void flush(List<MetricEvent> batch) {
+        try {
+            insert(batch);
+        } catch (Exception e) {
+            log.error("❌ Error writing {} metric events, spilling to {}: {}", batch.size(), spillPath, e.getMessage());
+            spill(batch);
+        }
+    }
+    
+    private void insert(List<MetricEvent> events) {
+        // Dictionary ids are resolved before the insert transaction opens, so
+        // interning never holds locks on the metrics batch.
+        List<RetargetingMetrics> rows = new ArrayList<>(events.size());
+        for (MetricEvent event : events) {
+            rows.add(RetargetingMetrics.builder()
+                .campaignId(event.campaignId())
+                .preCustomerId(event.preCustomerId())
+                .eventType(event.eventType())
+                .eventTimestamp(event.eventTimestamp())
+                .metadata(event.metadata())
+                .costIncurred(event.costIncurred())
+                .userAgentId(metricDictionary.intern(MetricDictionaryEntry.Kind.USER_AGENT, event.userAgent()))
+                .ipAddress(event.ipAddress())
+                .urlId(metricDictionary.intern(MetricDictionaryEntry.Kind.URL, event.url()))
+                .errorCode(event.errorCode())
+                .build());
+        }
+        
+        transactionTemplate.executeWithoutResult(status -> {
+            rows.forEach(entityManager::persist);
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+    
+    private void spill(List<MetricEvent> events) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillWriter = Files.newBufferedWriter(Paths.get(spillPath), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                for (MetricEvent event : events) {
+                    spillWriter.write(objectMapper.writeValueAsString(event));
+                    spillWriter.newLine();
+                }
+                spillWriter.flush();
+                spilled.increment(events.size());
+                spillPending = true;
+            } catch (IOException e) {
+                log.error("❌ Error spilling {} metric events, dropping them: {}", events.size(), e.getMessage());
+                dropped.increment(events.size());
+            }
+        }
+    }
+    
+    // The spill file is rotated aside before replay so new overflow can keep
+    // appending while the rotated file is inserted in batches. The number of
+    // lines already committed is recorded after every batch, so a failed
+    // replay resumes where it stopped instead of inserting earlier rows again.
+    // Lines that cannot be parsed (e.g. a write cut off by a crash) are moved
+    // to a .rejected file rather than blocking the rest of the file.
+    private void replaySpill() {
+        Path replayPath = Paths.get(spillPath + ".replay");
+        Path offsetPath = Paths.get(spillPath + ".replay.offset");
+        
+        synchronized (spillLock) {
+            closeSpillWriter();
+            spillPending = false;
+            try {
+                if (Files.exists(Paths.get(spillPath)) && !Files.exists(replayPath)) {
+                    Files.deleteIfExists(offsetPath);
+                    Files.move(Paths.get(spillPath), replayPath, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                log.error("❌ Error rotating metrics spill file: {}", e.getMessage());
+                spillPending = true;
+                return;
+            }
+        }
+        
+        if (!Files.exists(replayPath)) {
+            return;
+        }
+        
+        long committed = 0;
+        int replayed = 0;
+        int rejected = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayPath, StandardCharsets.UTF_8)) {
+            committed = readOffset(offsetPath);
+            long lineNumber = 0;
+            List<MetricEvent> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= committed || line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(objectMapper.readValue(line, MetricEvent.class));
+                } catch (IOException e) {
+                    reject(line);
+                    rejected++;
+                }
+                if (batch.size() >= batchSize) {
+                    insert(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                    committed = lineNumber;
+                    writeOffset(offsetPath, committed);
+                }
+            }
+            if (!batch.isEmpty()) {
+                insert(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replayPath);
+            Files.deleteIfExists(offsetPath);
+            spillPending = Files.exists(Paths.get(spillPath));
+            log.info("📊 Replayed {} spilled metric events, {} unreadable lines rejected", replayed, rejected);
+        } catch (Exception e) {
+            log.error("❌ Error replaying metrics spill file after line {}, resuming there on next flush: {}", committed, e.getMessage());
+            spillPending = true;
+        }
+    }
+    
+    private long readOffset(Path offsetPath) throws IOException {
+        if (!Files.exists(offsetPath)) {
+            return 0;
+        }
+        String value = Files.readString(offsetPath, StandardCharsets.UTF_8).trim();
+        return value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+    
+    private void writeOffset(Path offsetPath, long committed) throws IOException {
+        Path tmp = Paths.get(offsetPath + ".tmp");
+        Files.writeString(tmp, Long.toString(committed), StandardCharsets.UTF_8);
+        Files.move(tmp, offsetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private void reject(String line) throws IOException {
+        Files.writeString(Paths.get(spillPath + ".rejected"), line + System.lineSeparator(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        dropped.increment();
+    }
+    
+    private void closeSpillWriter() {
+        synchronized (spillLock) {
+            if (spillWriter == null) {
+                return;
+            }
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                log.warn("⚠️ Error closing metrics spill file: {}", e.getMessage());
+            }
+            spillWriter = null;
+        }
+    }
+    
+    public enum OverflowPolicy {
+        BLOCK, DROP_OLDEST, SPILL
+    }
+    
+    public record MetricEvent(
+        Long campaignId,
+        Long preCustomerId,
+        RetargetingMetrics.EventType eventType,
+        LocalDateTime eventTimestamp,
+        String metadata,
+        Double costIncurred,
+        String userAgent,
+        String ipAddress,
+        String url,
+        String errorCode
+    ) {
+        
+        public MetricEvent(Long campaignId, Long preCustomerId, RetargetingMetrics.EventType eventType,
+                           LocalDateTime eventTimestamp, String metadata, Double costIncurred) {
+            this(campaignId, preCustomerId, eventType, eventTimestamp, metadata, costIncurred, null, null, null, null);
+        }
+    }
+}
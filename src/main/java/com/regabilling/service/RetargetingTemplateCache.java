@@ -0,0 +1,139 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingTemplate;
+import com.regabilling.repository.RetargetingTemplateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetargetingTemplateCache {
+    
+    private final RetargetingTemplateRepository templateRepository;
+    
+    private volatile Snapshot snapshot;
+    
+    // Bumped on every invalidation so a reload that read pre-commit rows
+    // can tell it raced a clear() and must not publish.
+    private final AtomicLong generation = new AtomicLong();
+    
+    // Campaigns planned against a template that has since been deactivated
+    // still render from it; those are compiled on first use.
+    private final Map<Long, CachedTemplate> retiredTemplates = new ConcurrentHashMap<>();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reload();
+    }
+    
+    public Optional<CachedTemplate> find(RetargetingTemplate.TemplateType type, int week) {
+        return Optional.ofNullable(current().byKey().get(key(type, week)));
+    }
+    
+    public Optional<CachedTemplate> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        
+        CachedTemplate template = current().byId().get(id);
+        if (template != null) {
+            return Optional.of(template);
+        }
+        
+        template = retiredTemplates.get(id);
+        if (template == null) {
+            template = templateRepository.findById(id).map(RetargetingTemplateCache::compile).orElse(null);
+            if (template != null) {
+                retiredTemplates.put(id, template);
+            }
+        }
+        return Optional.ofNullable(template);
+    }
+    
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        } else {
+            clear();
+        }
+    }
+    
+    private Snapshot current() {
+        Snapshot loaded = snapshot;
+        return loaded != null ? loaded : reload();
+    }
+    
+    private synchronized Snapshot reload() {
+        Snapshot loaded = snapshot;
+        if (loaded != null) {
+            return loaded;
+        }
+        
+        long startedAt = generation.get();
+        Map<String, CachedTemplate> byKey = new HashMap<>();
+        Map<Long, CachedTemplate> byId = new HashMap<>();
+        for (RetargetingTemplate template : templateRepository.findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc()) {
+            CachedTemplate compiled = compile(template);
+            byKey.put(key(template.getTemplateType(), template.getCampaignWeek()), compiled);
+            byId.put(template.getId(), compiled);
+        }
+        
+        loaded = new Snapshot(Map.copyOf(byKey), Map.copyOf(byId));
+        // Publish only if no invalidation landed while we were reading;
+        // otherwise serve this result once and let the next caller reload.
+        if (generation.get() == startedAt) {
+            snapshot = loaded;
+            log.info("📋 Loaded {} active retargeting templates into cache", loaded.byKey().size());
+        }
+        return loaded;
+    }
+    
+    private void clear() {
+        generation.incrementAndGet();
+        snapshot = null;
+        retiredTemplates.clear();
+    }
+    
+    private static CachedTemplate compile(RetargetingTemplate template) {
+        return new CachedTemplate(
+            template.getId(),
+            template.getTemplateType(),
+            template.getCampaignWeek(),
+            CompiledTemplate.compile(template.getSubjectLine()),
+            CompiledTemplate.compile(template.getMessageContent())
+        );
+    }
+    
+    private static String key(RetargetingTemplate.TemplateType type, int week) {
+        return type.name() + ":" + week;
+    }
+    
+    private record Snapshot(Map<String, CachedTemplate> byKey, Map<Long, CachedTemplate> byId) {
+    }
+    
+    public record CachedTemplate(
+        Long id,
+        RetargetingTemplate.TemplateType type,
+        Integer campaignWeek,
+        CompiledTemplate subject,
+        CompiledTemplate body
+    ) {
+    }
+}
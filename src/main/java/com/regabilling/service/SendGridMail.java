@@ -0,0 +1,27 @@
+package com.regabilling.service;
+
+import java.util.List;
+import java.util.Map;
+
+public record SendGridMail(
+    Address from,
+    List<Personalization> personalizations,
+    String contentType,
+    String content
+) {
+    
+    public record Address(String email, String name) {
+    }
+    
+    public record Personalization(
+        List<Address> to,
+        String subject,
+        Map<String, String> substitutions,
+        Map<String, String> customArgs
+    ) {
+        
+        public static Personalization single(Address to, String subject) {
+            return new Personalization(List.of(to), subject, Map.of(), Map.of());
+        }
+    }
+}
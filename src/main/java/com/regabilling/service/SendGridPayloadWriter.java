@@ -0,0 +1,142 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+@Component
+public class SendGridPayloadWriter {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    
+    private static final SerializableString FROM = new SerializedString("from");
+    private static final SerializableString PERSONALIZATIONS = new SerializedString("personalizations");
+    private static final SerializableString TO = new SerializedString("to");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString SUBJECT = new SerializedString("subject");
+    private static final SerializableString SUBSTITUTIONS = new SerializedString("substitutions");
+    private static final SerializableString CUSTOM_ARGS = new SerializedString("custom_args");
+    private static final SerializableString CONTENT = new SerializedString("content");
+    private static final SerializableString TYPE = new SerializedString("type");
+    private static final SerializableString VALUE = new SerializedString("value");
+    private static final SerializableString TRACKING_SETTINGS = new SerializedString("tracking_settings");
+    
+    // Identical for every email, so it is encoded once and copied in as raw UTF-8.
+    // Click tracking stays off because links are already rewritten to our signed redirects.
+    private static final SerializableString TRACKING_SETTINGS_JSON = new SerializedString(
+        "{\"open_tracking\":{\"enable\":true},\"click_tracking\":{\"enable\":false}}"
+    );
+    
+    // Enough for every email worker to hold one
+    private static final int POOL_SIZE = 16;
+    private static final int BUFFER_SIZE = 4096;
+    
+    // A small shared pool rather than a ThreadLocal: with virtual delivery
+    // threads every send runs on a fresh thread and a ThreadLocal buffer would
+    // never be reused. When the pool is empty a new buffer is allocated, and
+    // buffers beyond the pool size are simply dropped on return.
+    private final BlockingQueue<ByteArrayBuilder> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    
+    public byte[] write(SendGridMail mail) {
+        ByteArrayBuilder buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new ByteArrayBuilder(BUFFER_SIZE);
+        }
+        
+        try {
+            return serialize(mail, buffer);
+        } finally {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+    
+    private static byte[] serialize(SendGridMail mail, ByteArrayBuilder buffer) {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(buffer)) {
+            json.writeStartObject();
+            
+            json.writeFieldName(FROM);
+            writeAddress(json, mail.from());
+            
+            json.writeFieldName(PERSONALIZATIONS);
+            json.writeStartArray();
+            for (SendGridMail.Personalization personalization : mail.personalizations()) {
+                writePersonalization(json, personalization);
+            }
+            json.writeEndArray();
+            
+            json.writeFieldName(CONTENT);
+            json.writeStartArray();
+            json.writeStartObject();
+            json.writeFieldName(TYPE);
+            json.writeString(mail.contentType());
+            json.writeFieldName(VALUE);
+            json.writeString(mail.content());
+            json.writeEndObject();
+            json.writeEndArray();
+            
+            json.writeFieldName(TRACKING_SETTINGS);
+            json.writeRawValue(TRACKING_SETTINGS_JSON);
+            
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize SendGrid payload", e);
+        }
+        
+        return buffer.toByteArray();
+    }
+    
+    private static void writePersonalization(JsonGenerator json, SendGridMail.Personalization personalization) throws IOException {
+        json.writeStartObject();
+        
+        json.writeFieldName(TO);
+        json.writeStartArray();
+        for (SendGridMail.Address address : personalization.to()) {
+            writeAddress(json, address);
+        }
+        json.writeEndArray();
+        
+        json.writeFieldName(SUBJECT);
+        json.writeString(personalization.subject());
+        
+        writeStringMap(json, SUBSTITUTIONS, personalization.substitutions());
+        writeStringMap(json, CUSTOM_ARGS, personalization.customArgs());
+        
+        json.writeEndObject();
+    }
+    
+    private static void writeAddress(JsonGenerator json, SendGridMail.Address address) throws IOException {
+        json.writeStartObject();
+        json.writeFieldName(EMAIL);
+        json.writeString(address.email());
+        if (address.name() != null) {
+            json.writeFieldName(NAME);
+            json.writeString(address.name());
+        }
+        json.writeEndObject();
+    }
+    
+    private static void writeStringMap(JsonGenerator json, SerializableString field, Map<String, String> values) throws IOException {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        
+        json.writeFieldName(field);
+        json.writeStartObject();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            json.writeFieldName(entry.getKey());
+            json.writeString(entry.getValue());
+        }
+        json.writeEndObject();
+    }
+}
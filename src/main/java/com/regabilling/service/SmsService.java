@@ -7,7 +7,6 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.Base64;
 import java.util.UUID;
@@ -17,7 +16,7 @@ import java.util.UUID;
 @Slf4j
 public class SmsService {
     
-    private final RestTemplate restTemplate;
+    private final ProviderHttpClient providerHttpClient;
     
     @Value("${app.sms.twilio.account-sid:mock-account-sid}")
     private String twilioAccountSid;
@@ -75,7 +74,7 @@ public class SmsService {
             body.add("Body", message);
             
             HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
+            ResponseEntity<String> response = providerHttpClient.post(url, request);
             
             if (response.getStatusCode().is2xxSuccessful()) {
                 log.info("📱 SMS sent via Twilio to {}", toNumber);
@@ -0,0 +1,313 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import com.regabilling.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TrackingEventBuffer {
+    
+    private static final int FLUSH_CHUNK_SIZE = 1000;
+    private static final int MAX_IP_LENGTH = 45;
+    
+    // A chunk that keeps failing is given up after this many flushes
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+    
+    private final RetargetingCampaignRepository campaignRepository;
+    private final RetargetingMetricsSink metricsSink;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${app.retargeting.tracking.max-pending-campaigns:100000}")
+    private int maxPendingCampaigns;
+    
+    @Value("${app.retargeting.tracking.dedup-expected-campaigns:1000000}")
+    private long dedupExpectedCampaigns;
+    
+    @Value("${app.retargeting.tracking.dedup-false-positive-rate:0.001}")
+    private double dedupFalsePositiveRate;
+    
+    // Events are coalesced per campaign: the first hit in a flush window wins and
+    // later hits only bump the counter, so one UPDATE covers the whole window.
+    private final Map<EventKind, ConcurrentHashMap<Long, PendingEvent>> pending = new EnumMap<>(EventKind.class);
+    private final Map<EventKind, Counter> dropped = new EnumMap<>(EventKind.class);
+    private final Map<EventKind, DedupWindow> dedupWindows = new EnumMap<>(EventKind.class);
+    
+    @PostConstruct
+    void registerMeters() {
+        for (EventKind kind : EventKind.values()) {
+            ConcurrentHashMap<Long, PendingEvent> events = new ConcurrentHashMap<>();
+            pending.put(kind, events);
+            dedupWindows.put(kind, new DedupWindow());
+            
+            Gauge.builder("retargeting.tracking.pending", events, Map::size)
+                .tag("event", kind.tag)
+                .register(meterRegistry);
+            dropped.put(kind, Counter.builder("retargeting.tracking.dropped")
+                .tag("event", kind.tag)
+                .register(meterRegistry));
+        }
+    }
+    
+    public void recordOpen(Long campaignId, String userAgent, String ipAddress) {
+        record(EventKind.OPEN, campaignId, userAgent, clientIp(ipAddress), null);
+    }
+    
+    public void recordClick(Long campaignId, String clickedUrl) {
+        record(EventKind.CLICK, campaignId, null, null, clickedUrl);
+    }
+    
+    private void record(EventKind kind, Long campaignId, String userAgent, String ipAddress, String url) {
+        ConcurrentHashMap<Long, PendingEvent> events = pending.get(kind);
+        boolean unique = dedupWindows.get(kind).firstSeen(campaignId);
+        
+        PendingEvent existing = events.get(campaignId);
+        if (existing != null) {
+            existing.hits.incrementAndGet();
+            if (unique) {
+                existing.unique = true;
+            }
+            return;
+        }
+        
+        if (events.size() >= maxPendingCampaigns) {
+            dropped.get(kind).increment();
+            return;
+        }
+        
+        events.merge(campaignId, new PendingEvent(LocalDateTime.now(), userAgent, ipAddress, url, unique), (current, ignored) -> {
+            current.hits.incrementAndGet();
+            current.unique |= unique;
+            return current;
+        });
+    }
+    
+    // Two generations give every campaign a dedup window of one to two periods
+    // without ever clearing a filter that is still being written to.
+    @Scheduled(
+        initialDelayString = "${app.retargeting.tracking.dedup-window-ms:3600000}",
+        fixedDelayString = "${app.retargeting.tracking.dedup-window-ms:3600000}"
+    )
+    public void rotateDedupWindows() {
+        dedupWindows.values().forEach(DedupWindow::rotate);
+    }
+    
+    @Scheduled(fixedDelayString = "${app.retargeting.tracking.flush-interval-ms:1000}")
+    public void flush() {
+        for (EventKind kind : EventKind.values()) {
+            flush(kind);
+        }
+    }
+    
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+    
+    private void flush(EventKind kind) {
+        ConcurrentHashMap<Long, PendingEvent> pendingEvents = pending.get(kind);
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, PendingEvent> events = new HashMap<>();
+        for (Long campaignId : pendingEvents.keySet()) {
+            PendingEvent event = pendingEvents.remove(campaignId);
+            if (event != null) {
+                events.put(campaignId, event);
+            }
+        }
+        
+        List<Long> campaignIds = new ArrayList<>(events.keySet());
+        for (int from = 0; from < campaignIds.size(); from += FLUSH_CHUNK_SIZE) {
+            List<Long> chunk = campaignIds.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, campaignIds.size()));
+            try {
+                flushChunk(kind, chunk, events);
+            } catch (Exception e) {
+                log.error("❌ Error flushing {} tracked {} events, retrying on the next flush: {}",
+                    chunk.size(), kind.tag, e.getMessage(), e);
+                requeue(kind, chunk, events);
+            }
+        }
+    }
+    
+    // Failed events go back into the pending map, folded into any newer hits
+    // for the same campaign, so first-seen timestamps, counts and unique
+    // metrics survive a database outage of a few flush intervals.
+    private void requeue(EventKind kind, List<Long> campaignIds, Map<Long, PendingEvent> events) {
+        ConcurrentHashMap<Long, PendingEvent> pendingEvents = pending.get(kind);
+        int abandoned = 0;
+        for (Long campaignId : campaignIds) {
+            PendingEvent event = events.get(campaignId);
+            if (++event.attempts >= MAX_FLUSH_ATTEMPTS
+                || (pendingEvents.size() >= maxPendingCampaigns && !pendingEvents.containsKey(campaignId))) {
+                abandoned++;
+                continue;
+            }
+            pendingEvents.merge(campaignId, event, (newer, failed) -> failed.absorb(newer));
+        }
+        
+        if (abandoned > 0) {
+            dropped.get(kind).increment(abandoned);
+            log.warn("⚠️ Dropped {} tracked {} events after repeated flush failures", abandoned, kind.tag);
+        }
+    }
+    
+    private void flushChunk(EventKind kind, List<Long> campaignIds, Map<Long, PendingEvent> events) {
+        List<Object[]> rows = new ArrayList<>(campaignIds.size());
+        List<RetargetingMetricsSink.MetricEvent> metrics = new ArrayList<>(campaignIds.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        
+        for (Object[] key : campaignRepository.findTrackingKeysByIds(campaignIds)) {
+            Long campaignId = (Long) key[0];
+            PendingEvent event = events.get(campaignId);
+            
+            rows.add(new Object[] {
+                Timestamp.valueOf(event.occurredAt), event.hits.get(), now, campaignId
+            });
+            
+            // Only the first hit per dedup window becomes a metric row; repeat
+            // hits (image prefetch, re-opens) only advance the total counter.
+            if (event.unique) {
+                metrics.add(new RetargetingMetricsSink.MetricEvent(
+                    campaignId,
+                    (Long) key[1],
+                    kind.eventType,
+                    event.occurredAt,
+                    null,
+                    (Double) key[2],
+                    event.userAgent,
+                    event.ipAddress,
+                    event.url,
+                    null
+                ));
+            }
+        }
+        
+        if (rows.isEmpty()) {
+            return;
+        }
+        
+        // One transaction per chunk, so a failed chunk is retried whole and
+        // the hit counters are never applied twice.
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(kind.updateSql, rows));
+        metrics.forEach(metricsSink::record);
+        log.debug("{} Flushed {} events for {} campaigns", kind.icon, kind.tag, rows.size());
+    }
+    
+    // X-Forwarded-For may carry a proxy chain; the first entry is the client.
+    private static String clientIp(String forwardedFor) {
+        if (forwardedFor == null || forwardedFor.isBlank() || "unknown".equals(forwardedFor)) {
+            return null;
+        }
+        int comma = forwardedFor.indexOf(',');
+        String ip = (comma >= 0 ? forwardedFor.substring(0, comma) : forwardedFor).trim();
+        return ip.length() > MAX_IP_LENGTH ? ip.substring(0, MAX_IP_LENGTH) : ip;
+    }
+    
+    private enum EventKind {
+        // Status only moves forward (see CampaignStatus.sourcesOf): an open
+        // never demotes a clicked or converted campaign, and a click never
+        // demotes a converted one.
+        OPEN(
+            "open", "👀",
+            "UPDATE retargeting_campaigns SET opened_at = COALESCE(opened_at, ?), open_count = COALESCE(open_count, 0) + ?, " +
+            "status = CASE WHEN status IN (" + CampaignStateStore.sourceList(RetargetingCampaign.CampaignStatus.OPENED) + ") " +
+            "THEN 'OPENED' ELSE status END, updated_at = ? WHERE id = ?",
+            RetargetingMetrics.EventType.EMAIL_OPENED
+        ),
+        CLICK(
+            "click", "🔗",
+            "UPDATE retargeting_campaigns SET clicked_at = COALESCE(clicked_at, ?), click_count = COALESCE(click_count, 0) + ?, " +
+            "status = CASE WHEN status IN (" + CampaignStateStore.sourceList(RetargetingCampaign.CampaignStatus.CLICKED) + ") " +
+            "THEN 'CLICKED' ELSE status END, updated_at = ? WHERE id = ?",
+            RetargetingMetrics.EventType.EMAIL_CLICKED
+        );
+        
+        private final String tag;
+        private final String icon;
+        private final String updateSql;
+        private final RetargetingMetrics.EventType eventType;
+        
+        EventKind(String tag, String icon, String updateSql, RetargetingMetrics.EventType eventType) {
+            this.tag = tag;
+            this.icon = icon;
+            this.updateSql = updateSql;
+            this.eventType = eventType;
+        }
+    }
+    
+    private final class DedupWindow {
+        
+        private volatile BloomFilter current = newFilter();
+        private volatile BloomFilter previous = newFilter();
+        
+        private boolean firstSeen(long campaignId) {
+            if (previous.mightContain(campaignId)) {
+                return false;
+            }
+            return current.put(campaignId);
+        }
+        
+        private void rotate() {
+            previous = current;
+            current = newFilter();
+        }
+        
+        private BloomFilter newFilter() {
+            return BloomFilter.create(dedupExpectedCampaigns, dedupFalsePositiveRate);
+        }
+    }
+    
+    private static final class PendingEvent {
+        
+        private final LocalDateTime occurredAt;
+        private final String userAgent;
+        private final String ipAddress;
+        private final String url;
+        private final AtomicInteger hits = new AtomicInteger(1);
+        private volatile boolean unique;
+        private int attempts;
+        
+        private PendingEvent(LocalDateTime occurredAt, String userAgent, String ipAddress, String url, boolean unique) {
+            this.occurredAt = occurredAt;
+            this.userAgent = userAgent;
+            this.ipAddress = ipAddress;
+            this.url = url;
+            this.unique = unique;
+        }
+        
+        // Keeps this (older) event's details and takes over the newer hits
+        private PendingEvent absorb(PendingEvent newer) {
+            hits.addAndGet(newer.hits.get());
+            unique |= newer.unique;
+            return this;
+        }
+    }
+}
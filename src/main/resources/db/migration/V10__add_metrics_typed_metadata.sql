@@ -0,0 +1,27 @@
+-- Typed metadata columns and a dictionary for repeated user agents and URLs
+-- V10__add_metrics_typed_metadata.sql
+--
+-- Existing rows keep their text metadata until RetargetingMetricsBackfill
+-- converts them in chunks, tracked by the 'retargeting_metrics_metadata' row
+-- in retargeting_rollup_watermarks. Parsing the legacy strings and interning
+-- into metric_dictionary needs the application's SHA-256 keys, so the
+-- backfill runs there rather than in SQL.
+
+CREATE TABLE IF NOT EXISTS metric_dictionary (
+    id BIGINT PRIMARY KEY,
+    kind VARCHAR(16) NOT NULL,
+    value_hash VARCHAR(64) NOT NULL,
+    entry_value TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    
+    CONSTRAINT uk_metric_dictionary_value UNIQUE (kind, value_hash)
+);
+
+ALTER TABLE retargeting_metrics ADD COLUMN IF NOT EXISTS user_agent_id BIGINT;
+ALTER TABLE retargeting_metrics ADD COLUMN IF NOT EXISTS ip_address VARCHAR(45);
+ALTER TABLE retargeting_metrics ADD COLUMN IF NOT EXISTS url_id BIGINT;
+ALTER TABLE retargeting_metrics ADD COLUMN IF NOT EXISTS error_code VARCHAR(64);
+
+INSERT INTO id_sequences (sequence_name, next_val)
+SELECT 'metric_dictionary', 1 FROM (SELECT 1 AS seed) seed
+WHERE NOT EXISTS (SELECT 1 FROM id_sequences WHERE sequence_name = 'metric_dictionary');
@@ -0,0 +1,24 @@
+-- Move rendered message bodies off the hot retargeting_campaigns row
+-- V11__split_campaign_content.sql
+--
+-- New campaigns render their body from template_id at send time. Bodies that
+-- were already rendered are kept in the side table and loaded only at send time.
+
+CREATE TABLE IF NOT EXISTS retargeting_campaign_contents (
+    campaign_id BIGINT PRIMARY KEY,
+    email_subject VARCHAR(255),
+    message_content TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO retargeting_campaign_contents (campaign_id, email_subject, message_content)
+SELECT c.id, c.email_subject, c.message_content
+FROM retargeting_campaigns c
+WHERE c.message_content IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM retargeting_campaign_contents cc WHERE cc.campaign_id = c.id);
+
+ALTER TABLE retargeting_campaigns DROP COLUMN message_content;
+ALTER TABLE retargeting_campaigns DROP COLUMN email_subject;
+
+UPDATE retargeting_campaigns SET error_message = LEFT(error_message, 512) WHERE CHAR_LENGTH(error_message) > 512;
+ALTER TABLE retargeting_campaigns MODIFY COLUMN error_message VARCHAR(512);
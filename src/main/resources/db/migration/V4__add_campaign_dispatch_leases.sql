@@ -0,0 +1,8 @@
+-- Dispatch leases for multi-node campaign execution
+-- V4__add_campaign_dispatch_leases.sql
+
+ALTER TABLE retargeting_campaigns ADD COLUMN IF NOT EXISTS lease_owner VARCHAR(255) NULL;
+ALTER TABLE retargeting_campaigns ADD COLUMN IF NOT EXISTS lease_until TIMESTAMP NULL;
+
+CREATE INDEX IF NOT EXISTS idx_retargeting_lease ON retargeting_campaigns(status, lease_until);
+CREATE INDEX IF NOT EXISTS idx_retargeting_lease_owner ON retargeting_campaigns(lease_owner);
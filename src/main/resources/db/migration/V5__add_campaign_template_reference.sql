@@ -0,0 +1,4 @@
+-- Template reference for grouping email campaigns into provider batches
+-- V5__add_campaign_template_reference.sql
+
+ALTER TABLE retargeting_campaigns ADD COLUMN IF NOT EXISTS template_id BIGINT NULL;
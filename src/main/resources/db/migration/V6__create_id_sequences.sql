@@ -0,0 +1,21 @@
+-- Pooled id allocation for batchable inserts
+-- V6__create_id_sequences.sql
+
+CREATE TABLE IF NOT EXISTS id_sequences (
+    sequence_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    next_val BIGINT
+);
+
+-- Seed each allocator one block past the current maximum so pooled ids never
+-- collide with rows that were inserted through AUTO_INCREMENT.
+INSERT INTO id_sequences (sequence_name, next_val)
+SELECT 'pre_customers', seed.next_val FROM (SELECT COALESCE(MAX(id), 0) + 51 AS next_val FROM pre_customers) seed
+WHERE NOT EXISTS (SELECT 1 FROM id_sequences WHERE sequence_name = 'pre_customers');
+
+INSERT INTO id_sequences (sequence_name, next_val)
+SELECT 'retargeting_campaigns', seed.next_val FROM (SELECT COALESCE(MAX(id), 0) + 51 AS next_val FROM retargeting_campaigns) seed
+WHERE NOT EXISTS (SELECT 1 FROM id_sequences WHERE sequence_name = 'retargeting_campaigns');
+
+INSERT INTO id_sequences (sequence_name, next_val)
+SELECT 'retargeting_metrics', seed.next_val FROM (SELECT COALESCE(MAX(id), 0) + 51 AS next_val FROM retargeting_metrics) seed
+WHERE NOT EXISTS (SELECT 1 FROM id_sequences WHERE sequence_name = 'retargeting_metrics');
@@ -0,0 +1,5 @@
+-- Total open/click hits per campaign; unique events stay in retargeting_metrics
+-- V7__add_campaign_engagement_counts.sql
+
+ALTER TABLE retargeting_campaigns ADD COLUMN IF NOT EXISTS open_count INTEGER DEFAULT 0;
+ALTER TABLE retargeting_campaigns ADD COLUMN IF NOT EXISTS click_count INTEGER DEFAULT 0;
@@ -0,0 +1,31 @@
+-- Pre-aggregated retargeting analytics
+-- V8__create_metrics_rollups.sql
+
+CREATE TABLE IF NOT EXISTS retargeting_metrics_rollups (
+    id BIGINT PRIMARY KEY,
+    granularity VARCHAR(16) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    campaign_week INTEGER NOT NULL,
+    channel VARCHAR(16) NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    total_cost DOUBLE NOT NULL DEFAULT 0.0,
+    updated_at TIMESTAMP NULL,
+    
+    CONSTRAINT uk_rollup_bucket UNIQUE (granularity, bucket_start, event_type, campaign_week, channel)
+);
+
+CREATE INDEX IF NOT EXISTS idx_rollup_granularity_bucket ON retargeting_metrics_rollups(granularity, bucket_start);
+
+CREATE TABLE IF NOT EXISTS retargeting_rollup_watermarks (
+    name VARCHAR(64) PRIMARY KEY,
+    last_metric_id BIGINT NOT NULL,
+    last_created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_metrics_created_id ON retargeting_metrics(created_at, id);
+
+INSERT INTO id_sequences (sequence_name, next_val)
+SELECT 'retargeting_metrics_rollups', 1 FROM (SELECT 1 AS seed) seed
+WHERE NOT EXISTS (SELECT 1 FROM id_sequences WHERE sequence_name = 'retargeting_metrics_rollups');
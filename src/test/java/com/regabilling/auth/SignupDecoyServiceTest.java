@@ -0,0 +1,87 @@
+package com.regabilling.auth;
+
+import com.regabilling.auth.dto.SignupDecoyRequest;
+import com.regabilling.auth.password.PasswordService;
+import com.regabilling.entity.PreCustomer;
+import com.regabilling.repository.PreCustomerRepository;
+import com.regabilling.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SignupDecoyServiceTest {
+    
+    private final PreCustomerRepository preCustomerRepository = mock(PreCustomerRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private RegisteredEmails registeredEmails;
+    private SignupDecoyService service;
+    
+    @BeforeEach
+    void setUp() {
+        registeredEmails = new RegisteredEmails(mock(JdbcTemplate.class), new SimpleMeterRegistry(), 1000, 0.01, 100);
+        // An empty, loaded filter: every email is a definite miss
+        ReflectionTestUtils.setField(registeredEmails, "ready", true);
+        service = new SignupDecoyService(preCustomerRepository, userRepository, mock(PasswordService.class), registeredEmails);
+    }
+    
+    @Test
+    void userCreatedAfterStartupIsStillRejected() {
+        when(userRepository.existsByEmail("late@example.com")).thenReturn(true);
+        
+        assertThatThrownBy(() -> service.initiateSignup(request("late@example.com")))
+            .isInstanceOf(EmailAlreadyRegisteredException.class);
+        verify(preCustomerRepository, never()).saveAndFlush(any());
+    }
+    
+    @Test
+    void filterMissSkipsOnlyThePreCustomerLookup() {
+        when(preCustomerRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            PreCustomer saved = invocation.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+        
+        assertThat(service.initiateSignup(request("new@example.com")).getPreCustomerId()).isEqualTo(7L);
+        verify(userRepository).existsByEmail("new@example.com");
+        verify(preCustomerRepository, never()).existsByEmail(any());
+    }
+    
+    @Test
+    void preCustomerInsertedByAnotherNodeIsCaughtByTheUniqueKey() {
+        when(preCustomerRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate",
+            new ConstraintViolationException("duplicate", new SQLException(), PreCustomer.EMAIL_UNIQUE_KEY)));
+        
+        assertThatThrownBy(() -> service.initiateSignup(request("other-node@example.com")))
+            .isInstanceOf(EmailAlreadyRegisteredException.class);
+    }
+    
+    @Test
+    void knownPreCustomerEmailIsCheckedAgainstTheTable() {
+        registeredEmails.add("Known@Example.com");
+        when(preCustomerRepository.existsByEmail("known@example.com")).thenReturn(true);
+        
+        assertThatThrownBy(() -> service.initiateSignup(request("known@example.com")))
+            .isInstanceOf(EmailAlreadyRegisteredException.class);
+    }
+    
+    private static SignupDecoyRequest request(String email) {
+        SignupDecoyRequest request = new SignupDecoyRequest();
+        request.setName("Test");
+        request.setEmail(email);
+        return request;
+    }
+}
@@ -0,0 +1,52 @@
+package com.regabilling.repository;
+
+import com.regabilling.entity.PreCustomer;
+import com.regabilling.entity.RetargetingCampaign;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Pooled table ids let Hibernate batch inserts; IDENTITY ids force one
+// round trip per row because each insert must return its key.
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PooledIdBatchingTest {
+    
+    @Autowired
+    private EntityManager entityManager;
+    
+    @Test
+    void campaignInsertsAreSentInJdbcBatches() {
+        PreCustomer preCustomer = PreCustomer.builder()
+            .name("Batch User")
+            .email("batch@example.com")
+            .phone("+910000000000")
+            .password("hashed")
+            .build();
+        entityManager.persist(preCustomer);
+        entityManager.flush();
+        
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        
+        for (int i = 0; i < 120; i++) {
+            entityManager.persist(RetargetingCampaign.builder()
+                .preCustomer(preCustomer)
+                .campaignType(RetargetingCampaign.CampaignType.EMAIL)
+                .scheduledAt(LocalDateTime.now())
+                .campaignWeek(1)
+                .build());
+        }
+        entityManager.flush();
+        
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(120);
+        // Three 50-row batches plus a handful of id block allocations
+        assertThat(statistics.getPrepareStatementCount()).isLessThan(20);
+    }
+}
@@ -0,0 +1,97 @@
+package com.regabilling.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.IncorrectClaimException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtServiceTest {
+    
+    private static final String ISSUER = "regabilling-test";
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtService jwtService = new JwtService(ISSUER, 15, SECRET, 100, meterRegistry);
+    
+    @Test
+    void repeatedTokenIsServedFromTheCache() {
+        String token = jwtService.generateAccessToken(7L, "user@example.com", "ACTIVE");
+        
+        Jws<Claims> first = jwtService.parseAndValidate(token);
+        Jws<Claims> second = jwtService.parseAndValidate(token);
+        
+        assertThat(second).isSameAs(first);
+        assertThat(second.getBody().getSubject()).isEqualTo("7");
+        assertThat(second.getBody().get("email", String.class)).isEqualTo("user@example.com");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt.verified.tokens").tag("result", "hit")
+            .functionCounter().count()).isEqualTo(1);
+    }
+    
+    @Test
+    void tokenSharingACachedSignatureIsStillVerified() {
+        String token = jwtService.generateAccessToken(7L, "user@example.com", "ACTIVE");
+        jwtService.parseAndValidate(token);
+        
+        // Same signature segment, different claims: the cache must not vouch for it
+        String[] parts = token.split("\\.");
+        String forgedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+            ("{\"iss\":\"" + ISSUER + "\",\"sub\":\"1\",\"exp\":" + (Instant.now().getEpochSecond() + 600) + "}")
+                .getBytes(StandardCharsets.UTF_8));
+        String forged = parts[0] + "." + forgedPayload + "." + parts[2];
+        
+        assertThatThrownBy(() -> jwtService.parseAndValidate(forged)).isInstanceOf(SignatureException.class);
+    }
+    
+    @Test
+    void expiredTokenIsRejected() {
+        String expired = token(Instant.now().minusSeconds(120), Instant.now().minusSeconds(60));
+        
+        assertThatThrownBy(() -> jwtService.parseAndValidate(expired)).isInstanceOf(ExpiredJwtException.class);
+    }
+    
+    @Test
+    void cachedTokenIsRejectedOnceItExpires() throws Exception {
+        String shortLived = token(Instant.now(), Instant.now().plusSeconds(1));
+        assertThat(jwtService.parseAndValidate(shortLived).getBody().getSubject()).isEqualTo("9");
+        
+        Thread.sleep(1500);
+        
+        assertThatThrownBy(() -> jwtService.parseAndValidate(shortLived)).isInstanceOf(ExpiredJwtException.class);
+    }
+    
+    @Test
+    void tokenFromAnotherIssuerIsRejected() {
+        String token = Jwts.builder()
+            .setIssuer("someone-else")
+            .setSubject("9")
+            .setExpiration(Date.from(Instant.now().plusSeconds(60)))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+            .compact();
+        
+        assertThatThrownBy(() -> jwtService.parseAndValidate(token)).isInstanceOf(IncorrectClaimException.class);
+    }
+    
+    private static String token(Instant issuedAt, Instant expiresAt) {
+        return Jwts.builder()
+            .setIssuer(ISSUER)
+            .setSubject("9")
+            .setIssuedAt(Date.from(issuedAt))
+            .setExpiration(Date.from(expiresAt))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+            .compact();
+    }
+}
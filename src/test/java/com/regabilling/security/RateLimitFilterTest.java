@@ -0,0 +1,83 @@
+package com.regabilling.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtService jwtService = new JwtService("regabilling-test", 15,
+        "0123456789abcdef0123456789abcdef", 100, meterRegistry);
+    private final RateLimitFilter filter = new RateLimitFilter(List.of(
+        new RateLimitFilter.RoutePolicy("login", "/auth/login", RateLimitFilter.KeyStrategy.IP, 2, Duration.ofMinutes(1)),
+        new RateLimitFilter.RoutePolicy("api", "/api/", RateLimitFilter.KeyStrategy.TOKEN, 2, Duration.ofMinutes(1))
+    ), jwtService, meterRegistry, true, 1000);
+    
+    @Test
+    void requestsOverTheLimitGet429WithRetryAfter() throws Exception {
+        assertThat(send("/auth/login", "10.0.0.1", null).getStatus()).isEqualTo(200);
+        assertThat(send("/auth/login", "10.0.0.1", null).getStatus()).isEqualTo(200);
+        
+        MockHttpServletResponse rejected = send("/auth/login", "10.0.0.1", null);
+        
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(Long.parseLong(rejected.getHeader(HttpHeaders.RETRY_AFTER))).isBetween(1L, 61L);
+        assertThat(rejected.getContentAsString()).contains("Too many requests");
+        assertThat(meterRegistry.counter("http.rate.limit.rejected", "route", "login").count()).isEqualTo(1);
+    }
+    
+    @Test
+    void clientsHaveSeparateBuckets() throws Exception {
+        send("/auth/login", "10.0.0.1", null);
+        send("/auth/login", "10.0.0.1", null);
+        
+        assertThat(send("/auth/login", "10.0.0.1", null).getStatus()).isEqualTo(429);
+        assertThat(send("/auth/login", "10.0.0.2", null).getStatus()).isEqualTo(200);
+    }
+    
+    @Test
+    void unmatchedPathsAreNotLimited() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(send("/actuator/health", "10.0.0.1", null).getStatus()).isEqualTo(200);
+        }
+    }
+    
+    @Test
+    void tokenRoutesShareOneBucketPerUserAcrossTokens() throws Exception {
+        String first = jwtService.generateAccessToken(7L, "user@example.com", "ACTIVE");
+        String second = jwtService.generateAccessToken(7L, "renamed@example.com", "ACTIVE");
+        
+        assertThat(send("/api/campaigns", "10.0.0.1", first).getStatus()).isEqualTo(200);
+        assertThat(send("/api/campaigns", "10.0.0.2", second).getStatus()).isEqualTo(200);
+        assertThat(send("/api/campaigns", "10.0.0.3", first).getStatus()).isEqualTo(429);
+    }
+    
+    @Test
+    void invalidTokensFallBackToTheClientAddress() throws Exception {
+        send("/api/campaigns", "10.0.0.1", "garbage-1");
+        send("/api/campaigns", "10.0.0.1", "garbage-2");
+        
+        assertThat(send("/api/campaigns", "10.0.0.1", "garbage-3").getStatus()).isEqualTo(429);
+        assertThat(send("/api/campaigns", "10.0.0.9", "garbage-4").getStatus()).isEqualTo(200);
+    }
+    
+    private MockHttpServletResponse send(String path, String remoteAddr, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setRemoteAddr(remoteAddr);
+        if (token != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
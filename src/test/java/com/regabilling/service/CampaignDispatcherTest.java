@@ -0,0 +1,115 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CampaignDispatcherTest {
+    
+    private final RetargetingCampaignRepository repository = mock(RetargetingCampaignRepository.class);
+    private final DeliveryPipeline pipeline = mock(DeliveryPipeline.class);
+    private CampaignDispatcher dispatcher;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(mock(TransactionStatus.class)));
+        doAnswer(invocation -> null).when(transactionTemplate).executeWithoutResult(any());
+        
+        dispatcher = new CampaignDispatcher(repository, pipeline, transactionTemplate, mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(dispatcher, "nodeId", "node-a");
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+        ReflectionTestUtils.setField(dispatcher, "maxBatchesPerRun", 1);
+        ReflectionTestUtils.setField(dispatcher, "leaseSeconds", 60L);
+        ReflectionTestUtils.setField(dispatcher, "mysql", false);
+        
+        when(pipeline.remainingCapacity()).thenReturn(100);
+        when(pipeline.submit(any())).thenReturn(true);
+    }
+    
+    @Test
+    void losingTheClaimRaceRetriesWithFreshCandidates() {
+        RetargetingCampaign campaign = RetargetingCampaign.builder()
+            .id(3L)
+            .campaignType(RetargetingCampaign.CampaignType.SMS)
+            .build();
+        when(repository.findDueCampaignIds(any(), any(), any()))
+            .thenReturn(List.of(1L, 2L))
+            .thenReturn(List.of(3L));
+        when(repository.claimCampaigns(any(), any(), any(), anyString(), any()))
+            .thenReturn(0)
+            .thenReturn(1);
+        when(repository.findClaimedCampaigns(anyString(), eq(RetargetingCampaign.CampaignStatus.DISPATCHING)))
+            .thenReturn(List.of(campaign));
+        
+        assertThat(dispatcher.dispatchDueCampaigns()).isEqualTo(1);
+        verify(repository, times(2)).findDueCampaignIds(any(), any(), any());
+        verify(pipeline).submit(campaign);
+    }
+    
+    @Test
+    void stopsRetryingAfterRepeatedLosses() {
+        when(repository.findDueCampaignIds(any(), any(), any())).thenReturn(List.of(1L));
+        when(repository.claimCampaigns(any(), any(), any(), anyString(), any())).thenReturn(0);
+        
+        assertThat(dispatcher.dispatchDueCampaigns()).isZero();
+        verify(repository, times(3)).claimCampaigns(any(), any(), any(), anyString(), any());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void emailBatchesAreSplitAtTheProviderRequestLimit() {
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 2500);
+        when(pipeline.remainingCapacity()).thenReturn(2500);
+        when(pipeline.submitEmailBatch(any())).thenReturn(true);
+        List<RetargetingCampaign> campaigns = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            campaigns.add(RetargetingCampaign.builder()
+                .id(id)
+                .campaignType(RetargetingCampaign.CampaignType.EMAIL)
+                .templateId(7L)
+                .campaignWeek(1)
+                .build());
+        }
+        when(repository.findDueCampaignIds(any(), any(), any())).thenReturn(List.of(1L));
+        when(repository.claimCampaigns(any(), any(), any(), anyString(), any())).thenReturn(2500);
+        when(repository.findClaimedCampaigns(anyString(), any())).thenReturn(campaigns);
+        
+        assertThat(dispatcher.dispatchDueCampaigns()).isEqualTo(2500);
+        
+        ArgumentCaptor<List<RetargetingCampaign>> batches = ArgumentCaptor.forClass(List.class);
+        verify(pipeline, times(3)).submitEmailBatch(batches.capture());
+        assertThat(batches.getAllValues()).extracting(List::size).containsExactly(1000, 1000, 500);
+    }
+    
+    @Test
+    void noDueCampaignsEndsTheRunWithoutClaiming() {
+        when(repository.findDueCampaignIds(any(), any(), any())).thenReturn(List.of());
+        
+        assertThat(dispatcher.dispatchDueCampaigns()).isZero();
+        verify(repository, times(0)).claimCampaigns(any(), any(), any(), anyString(), any());
+        verify(pipeline, times(0)).submit(any());
+    }
+}
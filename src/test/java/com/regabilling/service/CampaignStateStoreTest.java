@@ -0,0 +1,84 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign.CampaignStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CampaignStateStoreTest {
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private CampaignStateStore stateStore;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE retargeting_campaigns (id BIGINT PRIMARY KEY, status VARCHAR(32), " +
+            "sent_at TIMESTAMP, delivered_at TIMESTAMP, delivery_status VARCHAR(32), external_message_id VARCHAR(255), " +
+            "error_message VARCHAR(512), lease_owner VARCHAR(255), lease_until TIMESTAMP, updated_at TIMESTAMP)");
+        
+        stateStore = new CampaignStateStore(jdbcTemplate, meterRegistry);
+        ReflectionTestUtils.setField(stateStore, "batchSize", 10);
+        ReflectionTestUtils.invokeMethod(stateStore, "registerMeters");
+    }
+    
+    @Test
+    void sentCampaignMovesToDelivered() {
+        insert(1, CampaignStatus.SENT);
+        
+        stateStore.apply(List.of(CampaignStateStore.Transition.delivered(1L, LocalDateTime.now())));
+        
+        assertThat(status(1)).isEqualTo("DELIVERED");
+        assertThat(jdbcTemplate.queryForObject("SELECT delivered_at FROM retargeting_campaigns WHERE id = 1", Object.class)).isNotNull();
+    }
+    
+    @Test
+    void lateDeliveryReceiptNeverDemotesEngagement() {
+        insert(1, CampaignStatus.CLICKED);
+        
+        stateStore.apply(List.of(CampaignStateStore.Transition.delivered(1L, LocalDateTime.now())));
+        
+        assertThat(status(1)).isEqualTo("CLICKED");
+        assertThat(jdbcTemplate.queryForObject("SELECT delivery_status FROM retargeting_campaigns WHERE id = 1", String.class))
+            .isEqualTo("DELIVERED");
+    }
+    
+    @Test
+    void sentIsOnlyAppliedFromALegalSource() {
+        insert(1, CampaignStatus.DISPATCHING);
+        insert(2, CampaignStatus.OPENED);
+        
+        stateStore.apply(List.of(
+            CampaignStateStore.Transition.sent(1L, "msg-1"),
+            CampaignStateStore.Transition.sent(2L, "msg-2")
+        ));
+        
+        assertThat(status(1)).isEqualTo("SENT");
+        assertThat(status(2)).isEqualTo("OPENED");
+        assertThat(meterRegistry.counter("retargeting.campaign.state.ignored").count()).isEqualTo(1);
+    }
+    
+    @Test
+    void sourceListFollowsTheTransitionTable() {
+        assertThat(CampaignStateStore.sourceList(CampaignStatus.CLICKED)).isEqualTo("'SENT', 'DELIVERED', 'OPENED'");
+    }
+    
+    private void insert(long id, CampaignStatus status) {
+        jdbcTemplate.update("INSERT INTO retargeting_campaigns (id, status) VALUES (?, ?)", id, status.name());
+    }
+    
+    private String status(long id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM retargeting_campaigns WHERE id = ?", String.class, id);
+    }
+}
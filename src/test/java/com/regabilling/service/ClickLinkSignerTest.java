@@ -0,0 +1,82 @@
+package com.regabilling.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClickLinkSignerTest {
+    
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    
+    private final ClickLinkSigner signer = new ClickLinkSigner("https://track.example.com", SECRET);
+    
+    @Test
+    void signedLinkVerifiesBackToItsTarget() {
+        UriComponents link = parse(signer.signedLink(42L, "https://example.com/offer?a=1&b=2"));
+        
+        assertThat(link.getPath()).isEqualTo("/api/track/click/42");
+        assertThat(signer.verify(42L, link.getQueryParams().getFirst("u"), link.getQueryParams().getFirst("s")))
+            .isEqualTo("https://example.com/offer?a=1&b=2");
+    }
+    
+    @Test
+    void tamperedTargetIsRejected() {
+        UriComponents link = parse(signer.signedLink(42L, "https://example.com/offer"));
+        String forgedTarget = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("https://evil.example.com".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(signer.verify(42L, forgedTarget, link.getQueryParams().getFirst("s"))).isNull();
+    }
+    
+    @Test
+    void signatureIsBoundToTheCampaign() {
+        UriComponents link = parse(signer.signedLink(42L, "https://example.com/offer"));
+        
+        assertThat(signer.verify(43L, link.getQueryParams().getFirst("u"), link.getQueryParams().getFirst("s"))).isNull();
+    }
+    
+    @Test
+    void signatureFromAnotherSecretIsRejected() {
+        ClickLinkSigner other = new ClickLinkSigner("https://track.example.com", SECRET.replace('0', 'x'));
+        UriComponents link = parse(other.signedLink(42L, "https://example.com/offer"));
+        
+        assertThat(signer.verify(42L, link.getQueryParams().getFirst("u"), link.getQueryParams().getFirst("s"))).isNull();
+    }
+    
+    @Test
+    void malformedOrMissingParametersAreRejected() {
+        assertThat(signer.verify(42L, null, "abc")).isNull();
+        assertThat(signer.verify(42L, "aHR0cHM6Ly9leGFtcGxlLmNvbQ", null)).isNull();
+        assertThat(signer.verify(42L, "aHR0cHM6Ly9leGFtcGxlLmNvbQ", "!!not-base64!!")).isNull();
+    }
+    
+    @Test
+    void rewriteLinksSignsEveryHref() {
+        String html = "<a href=\"https://example.com/a\">A</a> <a href=\"https://example.com/b?x=1&amp;y=2\">B</a>";
+        
+        String rewritten = signer.rewriteLinks(html, 7L);
+        
+        assertThat(signer.findLinks(rewritten))
+            .hasSize(2)
+            .allSatisfy(link -> assertThat(link).startsWith("https://track.example.com/api/track/click/7?u="));
+        UriComponents second = parse(signer.findLinks(rewritten).get(1));
+        assertThat(signer.verify(7L, second.getQueryParams().getFirst("u"), second.getQueryParams().getFirst("s")))
+            .isEqualTo("https://example.com/b?x=1&y=2");
+    }
+    
+    @Test
+    void shortSecretIsRefused() {
+        assertThatThrownBy(() -> new ClickLinkSigner("https://track.example.com", "too-short"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    private static UriComponents parse(String link) {
+        return UriComponentsBuilder.fromUriString(link).build();
+    }
+}
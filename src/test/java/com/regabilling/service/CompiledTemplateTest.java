@@ -0,0 +1,74 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.PreCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledTemplateTest {
+    
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 3, 11, 9, 0);
+    
+    private final PreCustomer preCustomer = PreCustomer.builder()
+        .name("Asha Rao")
+        .email("asha@example.com")
+        .createdAt(LocalDateTime.of(2026, 3, 1, 18, 30))
+        .build();
+    
+    @Test
+    void rendersEveryPlaceholder() {
+        CompiledTemplate template = CompiledTemplate.compile(
+            "Hi {{firstName}} ({{name}}, {{email}}): {{daysSinceSignup}} days since {{signupDate}}.");
+        
+        assertThat(template.render(preCustomer, NOW))
+            .isEqualTo("Hi Asha (Asha Rao, asha@example.com): 9 days since 2026-03-01.");
+    }
+    
+    @Test
+    void matchesTheOldReplaceChain() {
+        String source = "<p>{{name}}</p><p>{{name}} again, {{email}}</p>";
+        String expected = source
+            .replace("{{name}}", preCustomer.getName())
+            .replace("{{email}}", preCustomer.getEmail());
+        
+        assertThat(CompiledTemplate.compile(source).render(preCustomer, NOW)).isEqualTo(expected);
+    }
+    
+    @Test
+    void unknownAndUnterminatedPlaceholdersStayLiteral() {
+        CompiledTemplate template = CompiledTemplate.compile("{{unknown}} {{name}} {{name");
+        
+        assertThat(template.render(preCustomer, NOW)).isEqualTo("{{unknown}} Asha Rao {{name");
+    }
+    
+    @Test
+    void firstNameOfASingleWordNameIsTheWholeName() {
+        preCustomer.setName("Madonna");
+        
+        assertThat(CompiledTemplate.compile("{{firstName}}").render(preCustomer, NOW)).isEqualTo("Madonna");
+    }
+    
+    @Test
+    void emptyAndPlainTemplatesRenderAsIs() {
+        assertThat(CompiledTemplate.compile(null).render(preCustomer, NOW)).isEmpty();
+        assertThat(CompiledTemplate.compile("").render(preCustomer, NOW)).isEmpty();
+        assertThat(CompiledTemplate.compile("no placeholders").render(preCustomer, NOW)).isEqualTo("no placeholders");
+    }
+    
+    @Test
+    void substitutionFormPairsWithCollectedValues() {
+        CompiledTemplate template = CompiledTemplate.compile("Hi {{firstName}}, {{email}}");
+        Map<String, String> substitutions = new LinkedHashMap<>();
+        
+        template.collectSubstitutions(substitutions, preCustomer, NOW);
+        
+        assertThat(template.toSubstitutionSource()).isEqualTo("Hi -firstName-, -email-");
+        assertThat(substitutions).containsExactly(
+            Map.entry("-firstName-", "Asha"),
+            Map.entry("-email-", "asha@example.com"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingCampaign;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class DeliveryPipelineTest {
+    
+    private final MessageDeliveryService deliveryService = mock(MessageDeliveryService.class);
+    private DeliveryPipeline pipeline;
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+    }
+    
+    @Test
+    void virtualModeCapsConcurrentProviderCallsAtTheWorkerCount() throws Exception {
+        start("virtual", 4, 100);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+        doAnswer(invocation -> {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            active.decrementAndGet();
+            done.countDown();
+            return null;
+        }).when(deliveryService).deliver(any());
+        
+        for (long id = 1; id <= 50; id++) {
+            assertThat(pipeline.submit(campaign(id))).isTrue();
+        }
+        
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(peak.get()).isBetween(1, 4);
+    }
+    
+    @Test
+    void virtualModeRejectsOnceAdmissionIsFull() throws Exception {
+        start("virtual", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(deliveryService).deliver(any());
+        
+        // One running plus two queued fills a lane of 1 worker and capacity 2
+        assertThat(pipeline.submit(campaign(1))).isTrue();
+        assertThat(pipeline.submit(campaign(2))).isTrue();
+        assertThat(pipeline.submit(campaign(3))).isTrue();
+        assertThat(pipeline.submit(campaign(4))).isFalse();
+        
+        release.countDown();
+        verify(deliveryService, timeout(5000).times(3)).deliver(any());
+    }
+    
+    @Test
+    void failedDeliveryIsRetriedThenMarkedFailed() {
+        start("platform", 1, 10);
+        ReflectionTestUtils.setField(pipeline, "initialBackoffMs", 10L);
+        RuntimeException error = new RuntimeException("provider down");
+        doThrow(error).when(deliveryService).deliver(any());
+        
+        RetargetingCampaign campaign = campaign(1);
+        assertThat(pipeline.submit(campaign)).isTrue();
+        
+        verify(deliveryService, timeout(5000).times(3)).deliver(campaign);
+        verify(deliveryService, timeout(5000)).markFailed(campaign, error);
+    }
+    
+    private void start(String executor, int workers, int queueCapacity) {
+        pipeline = new DeliveryPipeline(deliveryService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pipeline, "executorMode", executor);
+        ReflectionTestUtils.setField(pipeline, "emailWorkers", workers);
+        ReflectionTestUtils.setField(pipeline, "emailQueueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(pipeline, "smsWorkers", workers);
+        ReflectionTestUtils.setField(pipeline, "smsQueueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 3);
+        ReflectionTestUtils.setField(pipeline, "initialBackoffMs", 10L);
+        ReflectionTestUtils.setField(pipeline, "backoffMultiplier", 1.0);
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+    }
+    
+    private static RetargetingCampaign campaign(long id) {
+        return RetargetingCampaign.builder()
+            .id(id)
+            .campaignType(RetargetingCampaign.CampaignType.SMS)
+            .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs the real SendGrid request path against a local stub server.
+class EmailServiceTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final AtomicInteger status = new AtomicInteger(202);
+    
+    private HttpServer server;
+    private EmailService emailService;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v3/mail/send", exchange -> {
+            requests.add(objectMapper.readTree(exchange.getRequestBody()));
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            exchange.getResponseHeaders().add("X-Message-Id", "msg-" + requests.size());
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        
+        emailService = new EmailService(new ProviderHttpClient(new RestTemplate()), new SendGridPayloadWriter());
+        ReflectionTestUtils.setField(emailService, "sendGridBaseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(emailService, "sendGridApiKey", "test-key");
+        ReflectionTestUtils.setField(emailService, "fromEmail", "noreply@example.com");
+        ReflectionTestUtils.setField(emailService, "fromName", "Sender");
+        ReflectionTestUtils.setField(emailService, "mockMode", false);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+    
+    @Test
+    void batchGoesOutAsOneRequestWithOnePersonalizationPerRecipient() {
+        Map<Long, String> messageIds = emailService.sendRetargetingEmails("<p>-name-</p>", recipients(3));
+        
+        assertThat(requests).hasSize(1);
+        assertThat(authorizations).containsExactly("Bearer test-key");
+        JsonNode personalizations = requests.get(0).get("personalizations");
+        assertThat(personalizations).hasSize(3);
+        assertThat(personalizations.get(1).get("to").get(0).get("email").asText()).isEqualTo("user2@example.com");
+        assertThat(personalizations.get(1).get("substitutions").get("-name-").asText()).isEqualTo("User 2");
+        assertThat(personalizations.get(1).get("custom_args").get("campaign_id").asText()).isEqualTo("2");
+        assertThat(messageIds).containsEntry(1L, "msg-1#1").containsEntry(3L, "msg-1#3");
+    }
+    
+    @Test
+    void providerErrorFailsTheBatch() {
+        status.set(500);
+        
+        assertThatThrownBy(() -> emailService.sendRetargetingEmails("<p>hi</p>", recipients(2)))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("Email batch sending failed");
+        assertThat(requests).hasSize(1);
+    }
+    
+    @Test
+    void oversizedBatchIsRejectedBeforeAnyRequest() {
+        assertThatThrownBy(() -> emailService.sendRetargetingEmails("<p>hi</p>",
+                recipients(EmailService.MAX_PERSONALIZATIONS_PER_REQUEST + 1)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(requests).isEmpty();
+    }
+    
+    @Test
+    void singleEmailUsesTheSameEndpoint() {
+        assertThat(emailService.sendRetargetingEmail("one@example.com", "Hello", "<p>hi</p>", "One")).isEqualTo("msg-1");
+        assertThat(requests.get(0).get("personalizations").get(0).get("subject").asText()).isEqualTo("Hello");
+    }
+    
+    private static List<EmailService.BatchRecipient> recipients(int count) {
+        List<EmailService.BatchRecipient> recipients = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            recipients.add(new EmailService.BatchRecipient(id, "user" + id + "@example.com", "User " + id,
+                "Subject " + id, Map.of("-name-", "User " + id)));
+        }
+        return recipients;
+    }
+}
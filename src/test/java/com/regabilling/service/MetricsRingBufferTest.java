@@ -0,0 +1,112 @@
+package com.regabilling.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsRingBufferTest {
+    
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new MetricsRingBuffer<Integer>(5).capacity()).isEqualTo(8);
+        assertThat(new MetricsRingBuffer<Integer>(8).capacity()).isEqualTo(8);
+        assertThat(new MetricsRingBuffer<Integer>(1).capacity()).isEqualTo(2);
+    }
+    
+    @Test
+    void rejectsOffersWhenFullAndAcceptsAgainAfterPoll() {
+        MetricsRingBuffer<Integer> buffer = new MetricsRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+        
+        assertThat(buffer.poll()).isEqualTo(0);
+        assertThat(buffer.offer(4)).isTrue();
+        assertThat(buffer.offer(5)).isFalse();
+    }
+    
+    @Test
+    void keepsFifoOrderAcrossManyWraparounds() {
+        MetricsRingBuffer<Integer> buffer = new MetricsRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        
+        for (int lap = 0; lap < 1000; lap++) {
+            while (buffer.offer(next)) {
+                next++;
+            }
+            List<Integer> drained = new ArrayList<>();
+            buffer.drainTo(drained, 3);
+            for (int value : drained) {
+                assertThat(value).isEqualTo(expected++);
+            }
+        }
+        
+        Integer value;
+        while ((value = buffer.poll()) != null) {
+            assertThat(value).isEqualTo(expected++);
+        }
+        assertThat(expected).isEqualTo(next);
+        assertThat(buffer.size()).isZero();
+    }
+    
+    @Test
+    void pollOnEmptyBufferReturnsNull() {
+        MetricsRingBuffer<Integer> buffer = new MetricsRingBuffer<>(2);
+        
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.drainTo(new ArrayList<>(), 10)).isZero();
+    }
+    
+    @Test
+    void deliversEveryElementOnceWithConcurrentProducers() throws Exception {
+        MetricsRingBuffer<Integer> buffer = new MetricsRingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        
+        start.countDown();
+        Set<Integer> seen = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Integer value = buffer.poll();
+            if (value != null) {
+                assertThat(seen.add(value)).isTrue();
+            }
+        }
+        pool.shutdown();
+        
+        assertThat(seen).hasSize(producers * perProducer);
+        assertThat(buffer.poll()).isNull();
+    }
+}
@@ -0,0 +1,100 @@
+package com.regabilling.service;
+
+import com.regabilling.repository.RetargetingCampaignRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RetargetingBudgetLedgerTest {
+    
+    private final RetargetingCampaignRepository repository = mock(RetargetingCampaignRepository.class);
+    private RetargetingBudgetLedger ledger;
+    
+    @BeforeEach
+    void setUp() {
+        when(repository.getTotalCostSince(any())).thenReturn(0.0);
+        ledger = new RetargetingBudgetLedger(repository);
+        ReflectionTestUtils.setField(ledger, "maxWeeklySpend", 10.0);
+        ReflectionTestUtils.setField(ledger, "maxMonthlySpend", 100.0);
+        ledger.load();
+    }
+    
+    @Test
+    void reservationsStopAtTheWeeklyLimit() {
+        assertThat(ledger.tryReserve(6.0)).isTrue();
+        assertThat(ledger.tryReserve(5.0)).isFalse();
+        assertThat(ledger.tryReserve(4.0)).isTrue();
+        assertThat(ledger.hasHeadroom()).isFalse();
+    }
+    
+    @Test
+    void releaseReturnsTheReservedAmount() {
+        assertThat(ledger.tryReserve(6.0)).isTrue();
+        ledger.release(6.0);
+        
+        assertThat(ledger.tryReserve(10.0)).isTrue();
+    }
+    
+    @Test
+    void monthlyLimitAlsoApplies() {
+        ReflectionTestUtils.setField(ledger, "maxWeeklySpend", 1000.0);
+        when(repository.getTotalCostSince(any())).thenReturn(0.0, 95.0);
+        ledger.load();
+        
+        assertThat(ledger.tryReserve(6.0)).isFalse();
+        assertThat(ledger.tryReserve(5.0)).isTrue();
+    }
+    
+    @Test
+    void reloadKeepsReservationsThatAreNotCommittedYet() {
+        assertThat(ledger.tryReserve(8.0)).isTrue();
+        
+        ledger.load();
+        
+        assertThat(ledger.tryReserve(3.0)).isFalse();
+        ledger.commit(8.0);
+        when(repository.getTotalCostSince(any())).thenReturn(8.0);
+        ledger.load();
+        assertThat(ledger.tryReserve(2.0)).isTrue();
+        assertThat(ledger.tryReserve(0.01)).isFalse();
+    }
+    
+    @Test
+    void concurrentReservationsNeverOvershoot() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return ledger.tryReserve(0.25);
+                }));
+            }
+            start.countDown();
+            
+            int reserved = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(5, TimeUnit.SECONDS)) {
+                    reserved++;
+                }
+            }
+            assertThat(reserved).isEqualTo(40);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
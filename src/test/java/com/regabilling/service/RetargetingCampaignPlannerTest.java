@@ -0,0 +1,120 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.PreCustomer;
+import com.regabilling.entity.RetargetingCampaign;
+import com.regabilling.entity.RetargetingTemplate;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RetargetingCampaignPlannerTest {
+    
+    private final RetargetingCampaignRepository repository = mock(RetargetingCampaignRepository.class);
+    private final RetargetingTemplateCache templateCache = mock(RetargetingTemplateCache.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final RetargetingBudgetLedger budgetLedger = mock(RetargetingBudgetLedger.class);
+    private RetargetingCampaignPlanner planner;
+    
+    @BeforeEach
+    void setUp() {
+        planner = new RetargetingCampaignPlanner(repository, templateCache, jdbcTemplate, entityManager,
+            budgetLedger, mock(RetargetingMetricsSink.class));
+        ReflectionTestUtils.setField(planner, "emailCost", 0.5);
+        ReflectionTestUtils.setField(planner, "smsCost", 3.0);
+        
+        when(templateCache.find(eq(RetargetingTemplate.TemplateType.EMAIL), anyInt()))
+            .thenAnswer(invocation -> Optional.of(template(10L + invocation.<Integer>getArgument(1), RetargetingTemplate.TemplateType.EMAIL)));
+        when(templateCache.find(eq(RetargetingTemplate.TemplateType.SMS), anyInt()))
+            .thenAnswer(invocation -> Optional.of(template(20L + invocation.<Integer>getArgument(1), RetargetingTemplate.TemplateType.SMS)));
+        when(budgetLedger.tryReserve(anyDouble())).thenReturn(true);
+    }
+    
+    @Test
+    void plansAWholeChunkWithOneExistenceQueryAndBatchedUpdates() {
+        List<PreCustomer> chunk = List.of(preCustomer(1, 0), preCustomer(2, 1), preCustomer(3, 4));
+        when(repository.findCampaignWeeksByPreCustomerIds(anyList())).thenReturn(List.of());
+        
+        RetargetingCampaignPlanner.PlanResult result = planner.plan(chunk);
+        
+        assertThat(result.usersScheduled()).isEqualTo(2);
+        assertThat(result.budgetExhausted()).isFalse();
+        verify(repository, times(1)).findCampaignWeeksByPreCustomerIds(List.of(1L, 2L, 3L));
+        
+        ArgumentCaptor<RetargetingCampaign> persisted = ArgumentCaptor.forClass(RetargetingCampaign.class);
+        verify(entityManager, times(3)).persist(persisted.capture());
+        assertThat(persisted.getAllValues())
+            .extracting(RetargetingCampaign::getCampaignType, RetargetingCampaign::getCampaignWeek)
+            .containsExactly(
+                tuple(RetargetingCampaign.CampaignType.EMAIL, 1),
+                tuple(RetargetingCampaign.CampaignType.EMAIL, 2),
+                tuple(RetargetingCampaign.CampaignType.SMS, 2));
+        verify(entityManager, times(1)).flush();
+        
+        verify(jdbcTemplate).batchUpdate(any(String.class), argThatHasSize(2));
+        verify(jdbcTemplate).batchUpdate(any(String.class), argThatHasSize(1));
+        verify(budgetLedger).settleAfterTransaction(0.5 + 0.5 + 3.0);
+    }
+    
+    @Test
+    void skipsWeeksThatAlreadyHaveCampaigns() {
+        List<Object[]> existing = new ArrayList<>();
+        existing.add(new Object[] {1L, 1});
+        when(repository.findCampaignWeeksByPreCustomerIds(anyList())).thenReturn(existing);
+        
+        assertThat(planner.plan(List.of(preCustomer(1, 0))).usersScheduled()).isZero();
+        verify(entityManager, never()).persist(any());
+    }
+    
+    @Test
+    void stopsAtTheBudgetLimit() {
+        when(repository.findCampaignWeeksByPreCustomerIds(anyList())).thenReturn(List.of());
+        when(budgetLedger.tryReserve(anyDouble())).thenReturn(true, false);
+        
+        RetargetingCampaignPlanner.PlanResult result = planner.plan(List.of(preCustomer(1, 0), preCustomer(2, 0), preCustomer(3, 0)));
+        
+        assertThat(result.usersScheduled()).isEqualTo(1);
+        assertThat(result.budgetExhausted()).isTrue();
+        verify(budgetLedger).settleAfterTransaction(0.5);
+    }
+    
+    private static List<Object[]> argThatHasSize(int size) {
+        return argThat(rows -> rows != null && rows.size() == size);
+    }
+    
+    private static PreCustomer preCustomer(long id, int week) {
+        return PreCustomer.builder()
+            .id(id)
+            .name("User " + id)
+            .email("user" + id + "@example.com")
+            .retargetingWeek(week)
+            .build();
+    }
+    
+    private static RetargetingTemplateCache.CachedTemplate template(Long id, RetargetingTemplate.TemplateType type) {
+        return new RetargetingTemplateCache.CachedTemplate(id, type, 1,
+            CompiledTemplate.compile("Subject"), CompiledTemplate.compile("Body"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetargetingMetricsArchiveTest {
+    
+    private static final YearMonth MONTH = YearMonth.of(2026, 1);
+    
+    @TempDir
+    Path archiveDir;
+    
+    private JdbcTemplate jdbcTemplate;
+    private RetargetingMetricsArchive archive;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE metric_dictionary (id BIGINT PRIMARY KEY, entry_value VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE retargeting_metrics (id BIGINT PRIMARY KEY, campaign_id BIGINT, " +
+            "pre_customer_id BIGINT, event_type VARCHAR(32), event_timestamp TIMESTAMP, metadata VARCHAR(255), " +
+            "cost_incurred DOUBLE, created_at TIMESTAMP, user_agent_id BIGINT, ip_address VARCHAR(64), " +
+            "url_id BIGINT, error_code VARCHAR(64))");
+        
+        archive = new RetargetingMetricsArchive(jdbcTemplate, new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(archive, "archiveDir", archiveDir.toString());
+        ReflectionTestUtils.setField(archive, "chunkSize", 2);
+    }
+    
+    @Test
+    void reExportingAMonthWhoseDeleteFailedAddsNoDuplicates() throws Exception {
+        insert(1, 2, 3);
+        
+        RetargetingMetricsArchive.ExportResult first = archive.export(MONTH);
+        RetargetingMetricsArchive.ExportResult second = archive.export(MONTH);
+        
+        assertThat(first.rows()).isEqualTo(3);
+        assertThat(first.archivedThroughId()).isEqualTo(3);
+        assertThat(second.rows()).isZero();
+        assertThat(second.archivedThroughId()).isEqualTo(3);
+        assertThat(archive.listArchives().get(MONTH)).hasSize(1);
+        assertThat(readAll()).hasSize(3);
+    }
+    
+    @Test
+    void lateEventsGoIntoANewPartOnly() throws Exception {
+        insert(1, 2);
+        archive.export(MONTH);
+        insert(5);
+        
+        RetargetingMetricsArchive.ExportResult late = archive.export(MONTH);
+        
+        assertThat(late.rows()).isEqualTo(1);
+        assertThat(late.archivedThroughId()).isEqualTo(5);
+        assertThat(archive.listArchives().get(MONTH)).hasSize(2);
+        assertThat(readAll()).hasSize(3).doesNotHaveDuplicates();
+    }
+    
+    private void insert(long... ids) {
+        for (long id : ids) {
+            jdbcTemplate.update("INSERT INTO retargeting_metrics (id, campaign_id, event_type, event_timestamp) " +
+                "VALUES (?, 1, 'EMAIL_SENT', TIMESTAMP '2026-01-15 10:00:00')", id);
+        }
+    }
+    
+    private String[] readAll() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.read(MONTH, null, null, Integer.MAX_VALUE, out);
+        return out.toString(StandardCharsets.UTF_8).lines().toArray(String[]::new);
+    }
+}
@@ -0,0 +1,180 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.regabilling.entity.RetargetingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class RetargetingMetricsSinkTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Long> persisted = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger commitsAllowed = new AtomicInteger(Integer.MAX_VALUE);
+    
+    private RetargetingMetricsSink sink;
+    private Path spillPath;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        EntityManager entityManager = mock(EntityManager.class);
+        
+        // Rows only count as persisted once the "transaction" completes
+        List<Long> uncommitted = new ArrayList<>();
+        doAnswer(invocation -> {
+            uncommitted.add(invocation.<RetargetingMetrics>getArgument(0).getCampaignId());
+            return null;
+        }).when(entityManager).persist(any());
+        doAnswer(invocation -> {
+            uncommitted.clear();
+            if (commitsAllowed.getAndDecrement() <= 0) {
+                throw new IllegalStateException("database unavailable");
+            }
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            persisted.addAll(uncommitted);
+            uncommitted.clear();
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        
+        spillPath = tempDir.resolve("metrics-spill.ndjson");
+        sink = new RetargetingMetricsSink(transactionTemplate, entityManager, objectMapper, meterRegistry,
+            mock(MetricDictionary.class));
+        ReflectionTestUtils.setField(sink, "bufferCapacity", 2);
+        ReflectionTestUtils.setField(sink, "batchSize", 2);
+        ReflectionTestUtils.setField(sink, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(sink, "spillPath", spillPath.toString());
+    }
+    
+    @Test
+    void blockPolicyWaitsForTheWriterInsteadOfLosingEvents() throws Exception {
+        ReflectionTestUtils.setField(sink, "overflowPolicy", RetargetingMetricsSink.OverflowPolicy.BLOCK);
+        ReflectionTestUtils.invokeMethod(sink, "start");
+        
+        for (long id = 1; id <= 200; id++) {
+            sink.record(event(id));
+        }
+        ReflectionTestUtils.invokeMethod(sink, "stop");
+        
+        assertThat(persisted).hasSize(200).doesNotHaveDuplicates();
+        assertThat(spillPath).doesNotExist();
+    }
+    
+    @Test
+    void dropOldestPolicyKeepsTheNewestEvents() {
+        ReflectionTestUtils.setField(sink, "overflowPolicy", RetargetingMetricsSink.OverflowPolicy.DROP_OLDEST);
+        MetricsRingBuffer<RetargetingMetricsSink.MetricEvent> buffer = withoutWriter();
+        
+        for (long id = 1; id <= 5; id++) {
+            sink.record(event(id));
+        }
+        
+        assertThat(buffer.poll().campaignId()).isEqualTo(4L);
+        assertThat(buffer.poll().campaignId()).isEqualTo(5L);
+        assertThat(buffer.poll()).isNull();
+        assertThat(meterRegistry.counter("retargeting.metrics.dropped").count()).isEqualTo(3);
+    }
+    
+    @Test
+    void spillPolicyWritesOverflowToDiskAndReplaysIt() throws Exception {
+        ReflectionTestUtils.setField(sink, "overflowPolicy", RetargetingMetricsSink.OverflowPolicy.SPILL);
+        MetricsRingBuffer<RetargetingMetricsSink.MetricEvent> buffer = withoutWriter();
+        
+        for (long id = 1; id <= 5; id++) {
+            sink.record(event(id));
+        }
+        
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(Files.readAllLines(spillPath)).hasSize(3);
+        
+        replay();
+        
+        assertThat(persisted).containsExactly(3L, 4L, 5L);
+        assertThat(spillPath).doesNotExist();
+        assertThat(Path.of(spillPath + ".replay")).doesNotExist();
+    }
+    
+    @Test
+    void replayRejectsUnreadableLinesInsteadOfRetryingTheFile() throws Exception {
+        withoutWriter();
+        Files.write(spillPath, List.of(
+            json(1), json(2), "{not json", json(3), json(4).substring(0, 20)
+        ), StandardCharsets.UTF_8);
+        
+        replay();
+        replay();
+        
+        assertThat(persisted).containsExactly(1L, 2L, 3L);
+        assertThat(Files.readAllLines(Path.of(spillPath + ".rejected"))).hasSize(2);
+        assertThat(Path.of(spillPath + ".replay")).doesNotExist();
+    }
+    
+    @Test
+    void failedReplayResumesAfterTheLastCommittedBatch() throws Exception {
+        withoutWriter();
+        Files.write(spillPath, List.of(json(1), json(2), json(3), json(4), json(5)), StandardCharsets.UTF_8);
+        
+        commitsAllowed.set(1);
+        replay();
+        
+        assertThat(persisted).containsExactly(1L, 2L);
+        assertThat(Path.of(spillPath + ".replay")).exists();
+        assertThat(ReflectionTestUtils.getField(sink, "spillPending")).isEqualTo(true);
+        
+        commitsAllowed.set(Integer.MAX_VALUE);
+        replay();
+        
+        assertThat(persisted).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(Path.of(spillPath + ".replay")).doesNotExist();
+        assertThat(Path.of(spillPath + ".replay.offset")).doesNotExist();
+    }
+    
+    // Installs a buffer and meters without starting the writer thread, so
+    // the overflow path can be observed deterministically.
+    private MetricsRingBuffer<RetargetingMetricsSink.MetricEvent> withoutWriter() {
+        MetricsRingBuffer<RetargetingMetricsSink.MetricEvent> buffer = new MetricsRingBuffer<>(2);
+        ReflectionTestUtils.setField(sink, "buffer", buffer);
+        ReflectionTestUtils.setField(sink, "dropped", meterRegistry.counter("retargeting.metrics.dropped"));
+        ReflectionTestUtils.setField(sink, "spilled", meterRegistry.counter("retargeting.metrics.spilled"));
+        return buffer;
+    }
+    
+    private void replay() {
+        ReflectionTestUtils.invokeMethod(sink, "closeSpillWriter");
+        ReflectionTestUtils.invokeMethod(sink, "replaySpill");
+    }
+    
+    private String json(long campaignId) throws Exception {
+        return objectMapper.writeValueAsString(event(campaignId));
+    }
+    
+    private static RetargetingMetricsSink.MetricEvent event(long campaignId) {
+        return new RetargetingMetricsSink.MetricEvent(campaignId, 100L, RetargetingMetrics.EventType.EMAIL_SENT,
+            LocalDateTime.now(), null, 0.0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingTemplate;
+import com.regabilling.repository.RetargetingTemplateRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RetargetingTemplateCacheTest {
+    
+    private final RetargetingTemplateRepository repository = mock(RetargetingTemplateRepository.class);
+    private final RetargetingTemplateCache cache = new RetargetingTemplateCache(repository);
+    
+    @Test
+    void reloadThatRacedAnInvalidationIsNotPublished() {
+        RetargetingTemplate stale = template("Old subject");
+        RetargetingTemplate fresh = template("New subject");
+        // The edit commits (and clears the cache) while the first reload is still reading.
+        when(repository.findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc())
+            .thenAnswer(invocation -> {
+                cache.invalidate();
+                return List.of(stale);
+            })
+            .thenReturn(List.of(fresh));
+        
+        cache.warmUp();
+        
+        assertThat(cache.find(RetargetingTemplate.TemplateType.SMS, 1))
+            .hasValueSatisfying(cached -> assertThat(cached.subject().render(null, null)).isEqualTo("New subject"));
+        verify(repository, times(2)).findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc();
+    }
+    
+    @Test
+    void publishedSnapshotIsReusedUntilInvalidated() {
+        when(repository.findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc()).thenReturn(List.of(template("Hi")));
+        
+        cache.warmUp();
+        cache.find(RetargetingTemplate.TemplateType.SMS, 1);
+        cache.findById(11L);
+        verify(repository, times(1)).findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc();
+        
+        cache.invalidate();
+        assertThat(cache.findById(11L)).isPresent();
+        verify(repository, times(2)).findByIsActiveTrueOrderByCampaignWeekAscTemplateTypeAsc();
+    }
+    
+    private static RetargetingTemplate template(String subject) {
+        return RetargetingTemplate.builder()
+            .id(11L)
+            .templateType(RetargetingTemplate.TemplateType.SMS)
+            .campaignWeek(1)
+            .subjectLine(subject)
+            .messageContent("Body")
+            .build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.regabilling.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendGridPayloadWriterTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SendGridPayloadWriter writer = new SendGridPayloadWriter();
+    
+    @Test
+    void writesTheSendGridMailShape() throws Exception {
+        JsonNode json = objectMapper.readTree(writer.write(mail("Asha \"A\" Rao", "<p>Hi ✓</p>")));
+        
+        assertThat(json.get("from").get("email").asText()).isEqualTo("noreply@example.com");
+        JsonNode personalization = json.get("personalizations").get(0);
+        assertThat(personalization.get("to").get(0).get("name").asText()).isEqualTo("Asha \"A\" Rao");
+        assertThat(personalization.get("subject").asText()).isEqualTo("Hello");
+        assertThat(personalization.get("substitutions").get("-name-").asText()).isEqualTo("Asha \"A\" Rao");
+        assertThat(personalization.get("custom_args").get("campaign_id").asText()).isEqualTo("7");
+        assertThat(json.get("content").get(0).get("type").asText()).isEqualTo("text/html");
+        assertThat(json.get("content").get(0).get("value").asText()).isEqualTo("<p>Hi ✓</p>");
+        assertThat(json.get("tracking_settings").get("click_tracking").get("enable").asBoolean()).isFalse();
+    }
+    
+    @Test
+    void reusedBuffersNeverLeakIntoEarlierPayloads() throws Exception {
+        byte[] first = writer.write(mail("First", "<p>" + "x".repeat(10_000) + "</p>"));
+        String firstJson = new String(first);
+        
+        writer.write(mail("Second", "<p>short</p>"));
+        
+        assertThat(new String(first)).isEqualTo(firstJson);
+        assertThat(objectMapper.readTree(writer.write(mail("Third", "<p>short</p>")))
+            .get("personalizations").get(0).get("to").get(0).get("name").asText()).isEqualTo("Third");
+    }
+    
+    @Test
+    void concurrentWritesStayIndependent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> names = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String name = "User " + i;
+                names.add(executor.submit(() -> objectMapper.readTree(writer.write(mail(name, "<p>" + name + "</p>")))
+                    .get("personalizations").get(0).get("to").get(0).get("name").asText()));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                assertThat(names.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("User " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static SendGridMail mail(String name, String content) {
+        return new SendGridMail(
+            new SendGridMail.Address("noreply@example.com", "Sender"),
+            List.of(new SendGridMail.Personalization(
+                List.of(new SendGridMail.Address("user@example.com", name)),
+                "Hello",
+                Map.of("-name-", name),
+                Map.of("campaign_id", "7"))),
+            "text/html",
+            content
+        );
+    }
+}
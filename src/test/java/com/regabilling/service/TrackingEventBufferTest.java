@@ -0,0 +1,97 @@
+package com.regabilling.service;
+
+import com.regabilling.entity.RetargetingMetrics;
+import com.regabilling.repository.RetargetingCampaignRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TrackingEventBufferTest {
+    
+    private final RetargetingCampaignRepository repository = mock(RetargetingCampaignRepository.class);
+    private final RetargetingMetricsSink metricsSink = mock(RetargetingMetricsSink.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TrackingEventBuffer buffer;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        
+        buffer = new TrackingEventBuffer(repository, metricsSink, jdbcTemplate, transactionTemplate, meterRegistry);
+        ReflectionTestUtils.setField(buffer, "maxPendingCampaigns", 100);
+        ReflectionTestUtils.setField(buffer, "dedupExpectedCampaigns", 1000L);
+        ReflectionTestUtils.setField(buffer, "dedupFalsePositiveRate", 0.001);
+        ReflectionTestUtils.invokeMethod(buffer, "registerMeters");
+        
+        List<Object[]> keys = new ArrayList<>();
+        keys.add(new Object[] {1L, 10L, 0.5});
+        when(repository.findTrackingKeysByIds(anyList())).thenReturn(keys);
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedFlushIsRetriedWithTheHitsThatArrivedMeanwhile() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("database unavailable"))
+            .thenReturn(new int[] {1});
+        
+        buffer.recordOpen(1L, "agent", "10.0.0.1");
+        buffer.recordOpen(1L, "agent", "10.0.0.1");
+        buffer.flush();
+        
+        verify(metricsSink, never()).record(any());
+        
+        buffer.recordOpen(1L, "agent", "10.0.0.1");
+        buffer.flush();
+        
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).hasSize(1);
+        assertThat(rows.getValue().get(0)[1]).isEqualTo(3);
+        
+        ArgumentCaptor<RetargetingMetricsSink.MetricEvent> metric = ArgumentCaptor.forClass(RetargetingMetricsSink.MetricEvent.class);
+        verify(metricsSink).record(metric.capture());
+        assertThat(metric.getValue().eventType()).isEqualTo(RetargetingMetrics.EventType.EMAIL_OPENED);
+    }
+    
+    @Test
+    void eventsAreDroppedAfterRepeatedFailures() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("database unavailable"));
+        
+        buffer.recordClick(1L, "https://example.com");
+        for (int flush = 0; flush < 6; flush++) {
+            buffer.flush();
+        }
+        
+        verify(jdbcTemplate, times(5)).batchUpdate(anyString(), anyList());
+        assertThat(meterRegistry.counter("retargeting.tracking.dropped", "event", "click").count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,97 @@
+package com.regabilling.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+    
+    @Test
+    void insertedKeysAreAlwaysFound() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        
+        for (long key = 0; key < 10_000; key++) {
+            filter.put(key);
+            filter.put("user" + key + "@example.com");
+        }
+        
+        for (long key = 0; key < 10_000; key++) {
+            assertThat(filter.mightContain(key)).isTrue();
+            assertThat(filter.mightContain("user" + key + "@example.com")).isTrue();
+        }
+    }
+    
+    @Test
+    void falsePositiveRateStaysNearTheTarget() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (long key = 0; key < 10_000; key++) {
+            filter.put(key);
+        }
+        
+        int falsePositives = 0;
+        for (long key = 1_000_000; key < 1_100_000; key++) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    }
+    
+    @Test
+    void putReportsOnlyTheFirstInsertion() {
+        BloomFilter filter = BloomFilter.create(1_000, 0.001);
+        
+        assertThat(filter.put(7L)).isTrue();
+        assertThat(filter.put(7L)).isFalse();
+        assertThat(filter.put("a@example.com")).isTrue();
+        assertThat(filter.put("a@example.com")).isFalse();
+    }
+    
+    @Test
+    void concurrentInsertsOfOneKeyAreNeverLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (long key = 0; key < 200; key++) {
+                BloomFilter filter = BloomFilter.create(1_000, 0.001);
+                CountDownLatch start = new CountDownLatch(1);
+                long current = key;
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int thread = 0; thread < 8; thread++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return filter.put(current);
+                    }));
+                }
+                start.countDown();
+                
+                // Racing writers may each flip a different bit, but at least
+                // one of them must see the key as new
+                int firstSeen = 0;
+                for (Future<Boolean> result : results) {
+                    if (result.get(5, TimeUnit.SECONDS)) {
+                        firstSeen++;
+                    }
+                }
+                assertThat(firstSeen).isPositive();
+                assertThat(filter.mightContain(current)).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void sizingFollowsTheRequestedRate() {
+        assertThat(BloomFilter.create(1_000_000, 0.01).bitSize()).isBetween(9_000_000L, 10_000_000L);
+        assertThat(BloomFilter.create(0, 0.01).bitSize()).isGreaterThanOrEqualTo(64);
+    }
+}